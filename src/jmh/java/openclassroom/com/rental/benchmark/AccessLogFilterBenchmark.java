@@ -0,0 +1,101 @@
+package openclassroom.com.rental.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import openclassroom.com.rental.logging.AccessLogFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of AccessLogFilter on the request thread, with the same asynchronous,
+ * non-blocking appender as logback-spring.xml in front of an encoder that discards its output.
+ * "off" is the logger turned off, "sampled-out" a route with a sample rate of 0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessLogFilterBenchmark {
+
+    private static final FilterChain CHAIN = (request, response) ->
+            request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/rentals/{id}");
+
+    @Param({"logged", "sampled-out", "off"})
+    public String mode;
+
+    private AsyncAppender async;
+    private AccessLogFilter filter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setUp() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("{\"time\":\"%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX}\",%msg}%n");
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> discard = new OutputStreamAppender<>();
+        discard.setContext(context);
+        discard.setEncoder(encoder);
+        discard.setOutputStream(OutputStream.nullOutputStream());
+        discard.start();
+        async = new AsyncAppender();
+        async.setContext(context);
+        async.setQueueSize(8192);
+        async.setDiscardingThreshold(0);
+        async.setNeverBlock(true);
+        async.addAppender(discard);
+        async.start();
+
+        Logger access = context.getLogger("access");
+        access.detachAndStopAllAppenders();
+        access.setAdditive(false);
+        access.addAppender(async);
+        access.setLevel("off".equals(mode) ? Level.OFF : Level.INFO);
+
+        filter = new AccessLogFilter("sampled-out".equals(mode) ? new String[]{"/api/rentals/**=0"} : new String[0]);
+        request = new MockHttpServletRequest("GET", "/api/rentals/42");
+        response = new MockHttpServletResponse();
+        response.setContentLength(512);
+    }
+
+    @TearDown
+    public void tearDown() {
+        async.stop();
+    }
+
+    @Benchmark
+    public void request() throws ServletException, IOException {
+        // OncePerRequestFilter marks the request as filtered
+        request.clearAttributes();
+        filter.doFilter(request, response, CHAIN);
+    }
+}
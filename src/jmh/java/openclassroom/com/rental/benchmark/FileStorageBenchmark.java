@@ -0,0 +1,80 @@
+package openclassroom.com.rental.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import openclassroom.com.rental.service.FileStorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storing an upload of various sizes, either new content (hash + write + move)
+ * or content already on disk (hash only).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileStorageBenchmark {
+
+    @Param({"10240", "1048576", "5242880"})
+    public int fileSize;
+
+    @Param({"false", "true"})
+    public boolean duplicate;
+
+    private FileStorageService fileStorageService;
+    private Path uploadDir;
+    private byte[] content;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        uploadDir = Files.createTempDirectory("jmh-uploads");
+        fileStorageService = new FileStorageService(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(fileStorageService, "uploadDir", uploadDir.toString());
+        content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        // storeFile builds the public URL from the current request
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        RequestContextHolder.resetRequestAttributes();
+        FileSystemUtils.deleteRecursively(uploadDir);
+    }
+
+    @Benchmark
+    public String storeFile() {
+        if (!duplicate) {
+            // Change the first bytes so every invocation has a new content hash
+            ByteBuffer.wrap(content).putLong(0, counter++);
+        }
+        return fileStorageService.storeFile(new MockMultipartFile("picture", "picture.jpg", "image/jpeg", content));
+    }
+}
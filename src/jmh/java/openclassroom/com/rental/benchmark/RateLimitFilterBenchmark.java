@@ -0,0 +1,84 @@
+package openclassroom.com.rental.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import openclassroom.com.rental.security.AuthenticatedUser;
+import openclassroom.com.rental.security.JwtService;
+import openclassroom.com.rental.security.RateLimitFilter;
+import openclassroom.com.rental.security.TokenBucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of RateLimitFilter: finding the budget, identifying the client,
+ * taking a token and holding a concurrency permit. Budgets are large enough that
+ * every request is admitted, which is the common path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimitFilterBenchmark {
+
+    private static final FilterChain NO_OP = (request, response) -> { };
+
+    private RateLimitFilter filter;
+    private TokenBucket bucket;
+    private MockHttpServletRequest anonymous;
+    private MockHttpServletRequest authenticated;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setUp() {
+        JwtService jwtService = new JwtService(Base64.getEncoder().encodeToString(new byte[32]), 10_000,
+                new SimpleMeterRegistry());
+        filter = new RateLimitFilter(jwtService, true,
+                new String[]{"/api/auth/**=1000000000/1s", "/api/messages/batch=1000000000/1s", "/**=1000000000/1s"},
+                1000, 100_000, new SimpleMeterRegistry());
+        bucket = new TokenBucket(1_000_000_000, TimeUnit.SECONDS.toNanos(1), System.nanoTime());
+        anonymous = new MockHttpServletRequest("GET", "/api/rentals/42");
+        anonymous.setRemoteAddr("10.0.0.1");
+        authenticated = new MockHttpServletRequest("GET", "/api/rentals/42");
+        authenticated.setRemoteAddr("10.0.0.1");
+        authenticated.addHeader(HttpHeaders.AUTHORIZATION, "Bearer "
+                + jwtService.generateToken(new AuthenticatedUser(42, "bench@test.com", null, List.of(), 0)));
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public long tokenBucket() {
+        return bucket.tryAcquire(System.nanoTime());
+    }
+
+    @Benchmark
+    public void anonymousRequest() throws ServletException, IOException {
+        // OncePerRequestFilter marks the request as filtered
+        anonymous.clearAttributes();
+        filter.doFilter(anonymous, response, NO_OP);
+    }
+
+    @Benchmark
+    public void authenticatedRequest() throws ServletException, IOException {
+        authenticated.clearAttributes();
+        filter.doFilter(authenticated, response, NO_OP);
+    }
+}
@@ -0,0 +1,113 @@
+package openclassroom.com.rental.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import openclassroom.com.rental.dto.rental.ListRentalResponse;
+import openclassroom.com.rental.dto.rental.RentalResponse;
+import openclassroom.com.rental.service.RentalJsonCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Building a listing page from projected rows and serialising it the way
+ * the message converter does. The repository now projects straight into
+ * RentalResponse, so this is the remaining per-request mapping cost.
+ * The cached variant assembles the same page from RentalJsonCache, and the
+ * gzip variant adds the cost of compressing it for the wire.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RentalSerializationBenchmark {
+
+    @Param({"20", "100"})
+    public int pageSize;
+
+    private ObjectMapper objectMapper;
+    private RentalJsonCache rentalJsonCache;
+    private Object[][] rows;
+    private List<RentalResponse> page;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        rows = new Object[pageSize][];
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int i = 0; i < pageSize; i++) {
+            rows[i] = new Object[]{i, "Rental " + i, BigDecimal.valueOf(45), BigDecimal.valueOf(750),
+                    "http://localhost:8080/uploads/" + i + "-thumb.jpg", description(i), 7, now, now};
+        }
+        // Warm, as it is for any rental listed since its last change
+        rentalJsonCache = new RentalJsonCache(objectMapper, DataSize.ofMegabytes(16), new SimpleMeterRegistry());
+        page = toPage().getRentals();
+        rentalJsonCache.writePage(page, "cursor");
+    }
+
+    // Listings share most of their wording, as real ones do
+    private static String description(int i) {
+        return ("Bright " + (20 + i % 60) + " m2 flat on the " + (i % 6) + "th floor, close to the station and shops. "
+                + "Fully furnished, with a separate kitchen, a bathroom with a walk-in shower and a balcony facing the garden. "
+                + "Heating and hot water included, fibre internet available. ").repeat(2);
+    }
+
+    @Benchmark
+    public ListRentalResponse mapPage() {
+        return toPage();
+    }
+
+    @Benchmark
+    public byte[] mapAndSerializePage() throws Exception {
+        return objectMapper.writeValueAsBytes(toPage());
+    }
+
+    @Benchmark
+    public byte[] writeCachedPage() {
+        return rentalJsonCache.writePage(page, "cursor");
+    }
+
+    @Benchmark
+    public byte[] writeCachedPageGzipped() throws IOException {
+        return gzip(rentalJsonCache.writePage(page, "cursor"));
+    }
+
+    private static byte[] gzip(byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        }
+        return out.toByteArray();
+    }
+
+    private ListRentalResponse toPage() {
+        List<RentalResponse> rentals = new ArrayList<>(rows.length);
+        for (Object[] row : rows) {
+            rentals.add(new RentalResponse((Integer) row[0], (String) row[1], (BigDecimal) row[2],
+                    (BigDecimal) row[3], (String) row[4], (String) row[5], (Integer) row[6],
+                    (Timestamp) row[7], (Timestamp) row[8]));
+        }
+        return new ListRentalResponse(rentals, "cursor");
+    }
+}
@@ -0,0 +1,37 @@
+package openclassroom.com.rental.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and error count for one endpoint of the load test.
+ */
+class EndpointStats {
+    private final ConcurrentHistogram latencies = new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3);
+    private final LongAdder errors = new LongAdder();
+
+    void record(long nanos, boolean ok) {
+        latencies.recordValue(Math.min(nanos, latencies.getHighestTrackableValue()));
+        if (!ok) {
+            errors.increment();
+        }
+    }
+
+    long count() {
+        return latencies.getTotalCount();
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+
+    double percentileMillis(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1_000_000.0;
+    }
+
+    double maxMillis() {
+        return latencies.getMaxValue() / 1_000_000.0;
+    }
+}
@@ -0,0 +1,424 @@
+package openclassroom.com.rental.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import openclassroom.com.rental.RentalApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Boots the application against an in-memory H2 database in MySQL mode, seeds it,
+ * and replays the requests of the Postman collection in a weighted mix.
+ * Prints p50/p99 latency and throughput per endpoint and writes them to
+ * target/loadtest-result.json.
+ *
+ * Settings are system properties (defaults in brackets):
+ * loadtest.users [200], loadtest.rentals [10000], loadtest.messages [20000],
+ * loadtest.concurrency [32], loadtest.warmup [5] and loadtest.duration [30] in seconds,
+ * loadtest.mix [get-all=30,get=25,me=10,picture=10,message=10,login=5,update=4,create=3,register=3],
+ * loadtest.db-latency [0] in milliseconds added to every Hibernate statement,
+ * loadtest.batch-size [50] messages per "message-batch" request (only run when given a weight in the mix).
+ * Any extra "loadtest.app.*" property is passed to the application with the prefix removed.
+ */
+public class LoadTestHarness {
+    private static final String COLLECTION = "src/main/resources/templates/rental.postman_collection.json";
+    private static final String DEFAULT_MIX =
+            "get-all=30,get=25,me=10,picture=10,message=10,login=5,update=4,create=3,register=3";
+    private static final String PASSWORD = "loadtest-password";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final AtomicLong registrations = new AtomicLong();
+
+    private final int users = Integer.getInteger("loadtest.users", 200);
+    private final int rentals = Integer.getInteger("loadtest.rentals", 10_000);
+    private final int messages = Integer.getInteger("loadtest.messages", 20_000);
+    private final int concurrency = Integer.getInteger("loadtest.concurrency", 32);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup", 5);
+    private final int durationSeconds = Integer.getInteger("loadtest.duration", 30);
+    private final int batchSize = Integer.getInteger("loadtest.batch-size", 50);
+
+    private String baseUrl;
+    private String pictureUrl;
+    private byte[] picture;
+    private List<Scenario> scenarios;
+    private String[] tokens;
+
+    public static void main(String[] args) throws Exception {
+        // Devtools would restart the app in a second classloader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        new LoadTestHarness().run();
+    }
+
+    private void run() throws Exception {
+        Path uploadDir = Paths.get("target", "loadtest-uploads").toAbsolutePath();
+        Files.createDirectories(uploadDir);
+        try (ConfigurableApplicationContext context = start(uploadDir)) {
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            seed(context, uploadDir);
+            scenarios = loadScenarios(parseMix(System.getProperty("loadtest.mix", DEFAULT_MIX)));
+            tokens = login(Math.min(users, 50));
+
+            System.out.printf("Seeded %d users, %d rentals, %d messages; %d clients, %ds warmup, %ds measured%n",
+                    users, rentals, messages, concurrency, warmupSeconds, durationSeconds);
+            System.out.printf("Java %s, virtual threads %s, database latency %dms%n", Runtime.version().feature(),
+                    context.getEnvironment().getProperty("spring.threads.virtual.enabled", "false"),
+                    Long.getLong("loadtest.db-latency", 0));
+            drive(warmupSeconds, null);
+            Map<String, EndpointStats> stats = new LinkedHashMap<>();
+            scenarios.forEach(scenario -> stats.put(scenario.name(), new EndpointStats()));
+            drive(durationSeconds, stats);
+            report(stats);
+        }
+    }
+
+    private ConfigurableApplicationContext start(Path uploadDir) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("spring.datasource.url", "jdbc:h2:mem:loadtest;MODE=MySQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.jpa.hibernate.ddl-auto", "create");
+        properties.put("spring.jpa.open-in-view", "true");
+        properties.put("jwt.secret", Base64.getEncoder().encodeToString(new byte[32]));
+        properties.put("cors.allowed.origins", "http://localhost");
+        properties.put("file.upload-dir", uploadDir.toString());
+        properties.put("logging.level.root", "WARN");
+        // One access log line per request would bury the report; enable with loadtest.app.logging.level.access=INFO
+        properties.put("logging.level.access", "OFF");
+        // Every client shares one address and a handful of users; enable with loadtest.app.rate-limit.enabled=true
+        properties.put("rate-limit.enabled", "false");
+        if (Long.getLong("loadtest.db-latency", 0) > 0) {
+            properties.put("spring.jpa.properties.hibernate.session_factory.statement_inspector",
+                    SlowStatementInspector.class.getName());
+        }
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith("loadtest.app."))
+                .forEach(name -> properties.put(name.substring("loadtest.app.".length()), System.getProperty(name)));
+        return new SpringApplicationBuilder(RentalApplication.class)
+                .properties(properties)
+                .run();
+    }
+
+    private void seed(ConfigurableApplicationContext context, Path uploadDir) throws Exception {
+        picture = samplePicture();
+        String pictureName = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(picture)) + ".jpg";
+        Files.write(uploadDir.resolve(pictureName), picture);
+        pictureUrl = "/uploads/" + pictureName;
+
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        String hash = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+        jdbc.update("""
+                INSERT INTO users (name, email, password, token_version, created_at, updated_at)
+                SELECT 'user' || X, 'user' || X || '@loadtest.local', ?, 0, NOW(), NOW() FROM SYSTEM_RANGE(1, ?)
+                """, hash, users);
+        jdbc.update("""
+                INSERT INTO rentals (name, surface, price, picture, description, owner_id, create_at, updated_at)
+                SELECT 'Rental ' || X, 20 + MOD(X, 100), 300 + MOD(X * 7, 2000), ?, ?, 1 + MOD(X, ?),
+                       DATEADD('SECOND', -X, NOW()), NOW()
+                FROM SYSTEM_RANGE(1, ?)
+                """, baseUrl + pictureUrl, collectionDescription(), users, rentals);
+        jdbc.update("""
+                INSERT INTO messages (rental_id, user_id, message, created_at, updated_at)
+                SELECT 1 + MOD(X, ?), 1 + MOD(X, ?), 'message ' || X, NOW(), NOW() FROM SYSTEM_RANGE(1, ?)
+                """, rentals, users, messages);
+    }
+
+    private String[] login(int count) throws Exception {
+        String[] result = new String[count];
+        for (int user = 1; user <= count; user++) {
+            HttpResponse<String> response = httpClient.send(json("POST", "/api/auth/login",
+                    "{\"email\":\"user" + user + "@loadtest.local\",\"password\":\"" + PASSWORD + "\"}", null),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Login failed for seeded user " + user + ": " + response.body());
+            }
+            result[user - 1] = objectMapper.readTree(response.body()).get("token").asText();
+        }
+        return result;
+    }
+
+    // --- Scenarios ---------------------------------------------------------------------------
+
+    private record Scenario(String name, int weight, RequestTemplate template) {
+    }
+
+    private interface RequestTemplate {
+        HttpRequest build(int user, String token) throws IOException;
+    }
+
+    /**
+     * One scenario per request of the Postman collection, with its method, path and body.
+     * The collection uses fixed ids and credentials; those are replaced by seeded data.
+     */
+    private List<Scenario> loadScenarios(Map<String, Integer> mix) throws IOException {
+        List<Scenario> result = new ArrayList<>();
+        for (JsonNode item : flatten(objectMapper.readTree(Paths.get(COLLECTION).toFile()).get("item"))) {
+            String name = item.get("name").asText().toLowerCase().replace(' ', '-');
+            Integer weight = mix.get(name);
+            if (weight == null || weight <= 0) {
+                continue;
+            }
+            JsonNode request = item.get("request");
+            String method = request.get("method").asText();
+            String path = "/" + String.join("/", objectMapper.convertValue(request.get("url").get("path"), String[].class));
+            JsonNode body = request.get("body");
+            result.add(new Scenario(name, weight, template(name, method, path, body)));
+        }
+        Integer pictureWeight = mix.get("picture");
+        if (pictureWeight != null && pictureWeight > 0) {
+            // Not in the collection: browsers load the listing pictures after each page
+            result.add(new Scenario("picture", pictureWeight, (user, token) -> get(pictureUrl, null)));
+        }
+        Integer batchWeight = mix.get("message-batch");
+        if (batchWeight != null && batchWeight > 0) {
+            // Not in the collection: the bulk counterpart of "message", to compare rows per second
+            result.add(new Scenario("message-batch", batchWeight, (user, token) -> {
+                StringBuilder body = new StringBuilder("{\"messages\":[");
+                for (int i = 0; i < batchSize; i++) {
+                    body.append(i == 0 ? "" : ",")
+                            .append("{\"rental_id\":").append(randomRental())
+                            .append(",\"user_id\":").append(user)
+                            .append(",\"message\":\"batched message ").append(i).append("\"}");
+                }
+                return json("POST", "/api/messages/batch", body.append("]}").toString(), token);
+            }));
+        }
+        return result;
+    }
+
+    private RequestTemplate template(String name, String method, String path, JsonNode body) {
+        switch (name) {
+            case "register":
+                return (user, token) -> {
+                    long n = registrations.incrementAndGet();
+                    ObjectNode json = (ObjectNode) objectMapper.readTree(body.get("raw").asText());
+                    json.put("email", "new" + n + "-" + System.nanoTime() + "@loadtest.local");
+                    json.put("name", "new user " + n + "-" + System.nanoTime());
+                    return json("POST", "/api/auth/register", json.toString(), null);
+                };
+            case "login":
+                // The collection sends "login", the API expects "email"
+                return (user, token) -> json("POST", "/api/auth/login",
+                        "{\"email\":\"user" + user + "@loadtest.local\",\"password\":\"" + PASSWORD + "\"}", null);
+            case "create":
+                return (user, token) -> multipart("POST", "/api/rentals", body, true, token);
+            case "update":
+                return (user, token) -> multipart(method, "/api/rentals/" + ownedRental(user), body, false, token);
+            case "message":
+                return (user, token) -> {
+                    ObjectNode json = (ObjectNode) objectMapper.readTree(body.get("raw").asText());
+                    json.put("user_id", user);
+                    json.put("rental_id", randomRental());
+                    return json(method, "/api/messages", json.toString(), token);
+                };
+            default:
+                // Numeric segments are ids: point them at seeded rentals
+                return (user, token) -> {
+                    String resolved = path.replaceAll("/\\d+(?=/|$)", "/" + randomRental());
+                    return "GET".equals(method) ? get(resolved, token)
+                            : json(method, resolved, body == null ? "" : body.path("raw").asText(""), token);
+                };
+        }
+    }
+
+    private int randomRental() {
+        return 1 + ThreadLocalRandom.current().nextInt(rentals);
+    }
+
+    // Seeded rental x belongs to user 1 + (x mod users)
+    private int ownedRental(int user) {
+        int first = user == users ? users : user - 1;
+        int maxSteps = Math.max(1, (rentals - first) / users);
+        return Math.max(1, first + users * ThreadLocalRandom.current().nextInt(maxSteps));
+    }
+
+    private HttpRequest get(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path)).GET();
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    private HttpRequest json(String method, String path, String body, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    private HttpRequest multipart(String method, String path, JsonNode body, boolean withPicture, String token) {
+        String boundary = "loadtest" + System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (JsonNode field : body.get("formdata")) {
+            if ("file".equals(field.path("type").asText())) {
+                continue;
+            }
+            String part = "--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + field.get("key").asText()
+                    + "\"\r\n\r\n" + field.get("value").asText() + "\r\n";
+            out.writeBytes(part.getBytes(StandardCharsets.UTF_8));
+        }
+        if (withPicture) {
+            String header = "--" + boundary + "\r\nContent-Disposition: form-data; name=\"picture\"; filename=\"picture.jpg\""
+                    + "\r\nContent-Type: image/jpeg\r\n\r\n";
+            out.writeBytes(header.getBytes(StandardCharsets.UTF_8));
+            out.writeBytes(picture);
+            out.writeBytes("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+        out.writeBytes(("--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .header("Authorization", "Bearer " + token)
+                .method(method, HttpRequest.BodyPublishers.ofByteArray(out.toByteArray()))
+                .build();
+    }
+
+    // --- Driver ------------------------------------------------------------------------------
+
+    private void drive(int seconds, Map<String, EndpointStats> stats) throws InterruptedException {
+        int totalWeight = scenarios.stream().mapToInt(Scenario::weight).sum();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            clients.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    Scenario scenario = pick(random.nextInt(totalWeight));
+                    int user = 1 + random.nextInt(tokens.length);
+                    long start = System.nanoTime();
+                    boolean ok;
+                    try {
+                        HttpResponse<Void> response = httpClient.send(
+                                scenario.template().build(user, tokens[user - 1]), HttpResponse.BodyHandlers.discarding());
+                        ok = response.statusCode() < 400;
+                    } catch (IOException ex) {
+                        ok = false;
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if (stats != null) {
+                        stats.get(scenario.name()).record(System.nanoTime() - start, ok);
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+    }
+
+    private Scenario pick(int ticket) {
+        for (Scenario scenario : scenarios) {
+            ticket -= scenario.weight();
+            if (ticket < 0) {
+                return scenario;
+            }
+        }
+        return scenarios.get(scenarios.size() - 1);
+    }
+
+    private void report(Map<String, EndpointStats> stats) throws IOException {
+        ObjectNode result = objectMapper.createObjectNode();
+        System.out.printf("%n%-14s %10s %8s %10s %10s %10s %10s%n", "endpoint", "requests", "errors", "rps", "p50 ms", "p99 ms", "max ms");
+        long total = 0;
+        for (Map.Entry<String, EndpointStats> entry : stats.entrySet()) {
+            EndpointStats endpoint = entry.getValue();
+            double rps = endpoint.count() / (double) durationSeconds;
+            total += endpoint.count();
+            System.out.printf("%-14s %10d %8d %10.1f %10.2f %10.2f %10.2f%n", entry.getKey(), endpoint.count(),
+                    endpoint.errors(), rps, endpoint.percentileMillis(50), endpoint.percentileMillis(99), endpoint.maxMillis());
+            ObjectNode node = result.putObject(entry.getKey());
+            node.put("requests", endpoint.count());
+            node.put("errors", endpoint.errors());
+            node.put("rps", rps);
+            node.put("p50Ms", endpoint.percentileMillis(50));
+            node.put("p99Ms", endpoint.percentileMillis(99));
+            node.put("maxMs", endpoint.maxMillis());
+        }
+        System.out.printf("%-14s %10d %8s %10.1f%n", "total", total, "", total / (double) durationSeconds);
+        Path output = Paths.get("target", "loadtest-result.json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(output.toFile(), result);
+        System.out.println("Results written to " + output.toAbsolutePath());
+    }
+
+    // --- Helpers -----------------------------------------------------------------------------
+
+    private static List<JsonNode> flatten(JsonNode items) {
+        List<JsonNode> result = new ArrayList<>();
+        for (JsonNode item : items) {
+            if (item.has("item")) {
+                result.addAll(flatten(item.get("item")));
+            } else {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    private String collectionDescription() throws IOException {
+        for (JsonNode item : flatten(objectMapper.readTree(Paths.get(COLLECTION).toFile()).get("item"))) {
+            for (JsonNode field : item.get("request").path("body").path("formdata")) {
+                if ("description".equals(field.path("key").asText())) {
+                    return field.get("value").asText();
+                }
+            }
+        }
+        return "description";
+    }
+
+    private static byte[] samplePicture() throws IOException {
+        BufferedImage image = new BufferedImage(1200, 800, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        for (int x = 0; x < image.getWidth(); x += 40) {
+            graphics.setColor(new Color(x % 256, (x * 3) % 256, 180));
+            graphics.fillRect(x, 0, 40, image.getHeight());
+        }
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+}
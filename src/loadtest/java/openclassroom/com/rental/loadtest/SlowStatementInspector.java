@@ -0,0 +1,26 @@
+package openclassroom.com.rental.loadtest;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delays every statement Hibernate prepares by loadtest.db-latency milliseconds, so the
+ * in-memory database behaves like a remote one. The connection stays checked out while
+ * the thread sleeps, as it would while waiting on the network.
+ */
+public class SlowStatementInspector implements StatementInspector {
+    private final long latencyNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("loadtest.db-latency", 0));
+
+    @Override
+    public String inspect(String sql) {
+        if (latencyNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(latencyNanos);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return sql;
+    }
+}
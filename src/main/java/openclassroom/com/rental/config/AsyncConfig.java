@@ -0,0 +1,56 @@
+package openclassroom.com.rental.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+@EnableAsync
+public class AsyncConfig {
+
+    public static final String IMAGE_EXECUTOR = "imageExecutor";
+    public static final String PASSWORD_EXECUTOR = "passwordExecutor";
+
+    @Value("${image.workers:2}")
+    private int imageWorkers;
+
+    @Value("${image.queue-capacity:100}")
+    private int imageQueueCapacity;
+
+    // 0 means half the cores, so a login storm always leaves CPU for other requests
+    @Value("${password.workers:0}")
+    private int passwordWorkers;
+
+    @Value("${password.queue-capacity:100}")
+    private int passwordQueueCapacity;
+
+    // Bounded pool for picture resizing: when the queue is full the task is rejected
+    // and the rental keeps serving its original picture. Resizing is CPU-bound, so this pool
+    // stays on platform threads even when spring.threads.virtual.enabled is set
+    @Bean(name = IMAGE_EXECUTOR)
+    public ThreadPoolTaskExecutor imageExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(imageWorkers);
+        executor.setMaxPoolSize(imageWorkers);
+        executor.setQueueCapacity(imageQueueCapacity);
+        executor.setThreadNamePrefix("image-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    // Password hashing (login, registration) runs here instead of on request threads.
+    // Once the queue is full further attempts are rejected and answered 503
+    @Bean(name = PASSWORD_EXECUTOR)
+    public ThreadPoolTaskExecutor passwordExecutor() {
+        int workers = passwordWorkers > 0 ? passwordWorkers : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(passwordQueueCapacity);
+        executor.setThreadNamePrefix("password-");
+        return executor;
+    }
+}
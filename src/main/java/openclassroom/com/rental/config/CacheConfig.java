@@ -0,0 +1,46 @@
+package openclassroom.com.rental.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.time.Duration;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String USERS_BY_EMAIL = "usersByEmail";
+    public static final String USERS_BY_ID = "usersById";
+
+    @Value("${cache.users.max-size:10000}")
+    private long usersMaxSize;
+
+    @Value("${cache.users.ttl:10m}")
+    private Duration usersTtl;
+
+    @Bean
+    public CacheManager cacheManager(Environment environment) {
+        // Caches are declared up front so the actuator binds their hit/miss/eviction stats at startup
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(USERS_BY_EMAIL, USERS_BY_ID);
+        Caffeine<Object, Object> caffeine = Caffeine.newBuilder()
+                .maximumSize(usersMaxSize)
+                .expireAfterWrite(usersTtl)
+                .recordStats();
+        if (Threading.VIRTUAL.isActive(environment)) {
+            // A synchronous load runs the query inside ConcurrentHashMap.compute, whose monitor pins
+            // the carrier thread; in async mode the lock only covers creating the future
+            caffeine.executor(new VirtualThreadTaskExecutor("cache-load-"));
+            cacheManager.setAsyncCacheMode(true);
+        }
+        cacheManager.setCaffeine(caffeine);
+        return cacheManager;
+    }
+}
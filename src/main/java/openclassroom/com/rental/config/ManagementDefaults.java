@@ -0,0 +1,24 @@
+package openclassroom.com.rental.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+/**
+ * Actuator settings the application ships with. The source is added last, so the same keys
+ * set in .env, system properties or application properties still win.
+ */
+public class ManagementDefaults implements EnvironmentPostProcessor {
+
+    static final String PROPERTY_SOURCE_NAME = "managementDefaults";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        environment.getPropertySources().addLast(new MapPropertySource(PROPERTY_SOURCE_NAME, Map.of(
+                // Spring Boot only exposes health over HTTP by default
+                "management.endpoints.web.exposure.include", "health,prometheus")));
+    }
+}
@@ -0,0 +1,84 @@
+package openclassroom.com.rental.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import openclassroom.com.rental.logging.DbTimeListener;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Metrics are exposed on /actuator/prometheus, to the scrape credentials only. Every tag holds
+ * a bounded set of values (route templates, class and method names, outcomes), never ids,
+ * users or raw paths.
+ */
+@Configuration
+public class MetricsConfig {
+
+    static final String HTTP_SERVER_REQUESTS = "http.server.requests";
+
+    // Backs @Timed on the services: one timer per method, tagged with class, method and exception
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    // Same key as Spring Boot's spring.jpa.properties.hibernate.generate_statistics, but on by default
+    // so hibernate-micrometer publishes query, entity and second-level cache counters
+    @Bean
+    public HibernatePropertiesCustomizer hibernateStatisticsCustomizer(
+            @Value("${spring.jpa.properties.hibernate.generate_statistics:true}") boolean generateStatistics) {
+        return properties -> properties.put("hibernate.generate_statistics", generateStatistics);
+    }
+
+    // One DbTimeListener per session feeds the database time of the access log
+    @Bean
+    public HibernatePropertiesCustomizer dbTimeCustomizer() {
+        return properties -> properties.put(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, DbTimeListener.class.getName());
+    }
+
+    /**
+     * Publishes the full set of histogram buckets for the listed route templates (the "uri" tag,
+     * e.g. /api/rentals/{id}), about seventy series per status and method, so it is kept to the
+     * routes whose latency distribution is actually watched. The other routes get the coarse
+     * buckets only: Prometheus rejects a metric whose series mix histograms and summaries.
+     */
+    @Bean
+    public MeterFilter routeHistogramFilter(
+            @Value("${metrics.http.histogram-routes:/api/rentals,/api/rentals/{id}}") String[] routes,
+            @Value("${metrics.http.coarse-buckets:100ms,1s}") Duration[] coarseBuckets) {
+        return routeHistograms(routes, coarseBuckets);
+    }
+
+    static MeterFilter routeHistograms(String[] routes, Duration... coarseBuckets) {
+        Set<String> templates = Arrays.stream(routes)
+                .map(String::trim)
+                .filter(route -> !route.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        DistributionStatisticConfig detailed = DistributionStatisticConfig.builder()
+                .percentilesHistogram(true)
+                .build();
+        DistributionStatisticConfig coarse = DistributionStatisticConfig.builder()
+                .serviceLevelObjectives(Arrays.stream(coarseBuckets).mapToDouble(Duration::toNanos).toArray())
+                .build();
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!HTTP_SERVER_REQUESTS.equals(id.getName())) {
+                    return config;
+                }
+                return (templates.contains(id.getTag("uri")) ? detailed : coarse).merge(config);
+            }
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package openclassroom.com.rental.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Polls the replica for its replication delay. Reads fall back to the primary while the
+ * delay is above the limit or can't be determined (replication stopped, replica down).
+ */
+public class ReplicaLagMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private final JdbcTemplate replica;
+    private final String lagQuery;
+    private final String lagColumn;
+    private final long maxLagSeconds;
+
+    private volatile double lagSeconds = Double.NaN;
+    private volatile boolean usable;
+
+    public ReplicaLagMonitor(DataSource replica, String lagQuery, String lagColumn, Duration maxLag,
+                             MeterRegistry meterRegistry) {
+        this.replica = new JdbcTemplate(replica);
+        this.lagQuery = lagQuery;
+        this.lagColumn = lagColumn;
+        this.maxLagSeconds = maxLag.toSeconds();
+        Gauge.builder("datasource.replica.lag", this, monitor -> monitor.lagSeconds)
+                .description("Replication delay of the read replica, NaN when unknown")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        check();
+    }
+
+    public boolean isReplicaUsable() {
+        return usable;
+    }
+
+    @Scheduled(fixedDelayString = "${spring.datasource.replica.lag-check-interval:1s}")
+    public void check() {
+        Number lag;
+        try {
+            lag = replica.query(lagQuery, rs -> rs.next() ? (Number) rs.getObject(lagColumn) : null);
+        } catch (DataAccessException | ClassCastException ex) {
+            logger.debug("Could not read replica lag", ex);
+            lag = null;
+        }
+        lagSeconds = lag == null ? Double.NaN : lag.doubleValue();
+        boolean nowUsable = lag != null && lag.longValue() <= maxLagSeconds;
+        if (nowUsable != usable) {
+            if (nowUsable) {
+                logger.info("Replica caught up (lag {}s), routing read-only transactions to it", lag);
+            } else if (lag == null) {
+                logger.warn("Replica lag unknown, routing reads to the primary");
+            } else {
+                logger.warn("Replica lag {}s is above {}s, routing reads to the primary", lag, maxLagSeconds);
+            }
+        }
+        usable = nowUsable;
+    }
+}
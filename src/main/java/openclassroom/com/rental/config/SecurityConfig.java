@@ -1,10 +1,16 @@
 package openclassroom.com.rental.config;
 
+import openclassroom.com.rental.logging.AccessLogFilter;
 import openclassroom.com.rental.repository.CustomUserDetailsService;
+import openclassroom.com.rental.security.BoundedPasswordEncoder;
 import openclassroom.com.rental.security.JwtFilter;
+import openclassroom.com.rental.security.RateLimitFilter;
+import openclassroom.com.rental.security.ScrapeAuthorizationManager;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -12,28 +18,46 @@ import org.springframework.security.config.annotation.authentication.configurati
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.util.ClassUtils;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 @Configuration
 public class SecurityConfig  {
 
     private final JwtFilter  jwtFilter;
 
+    private final RateLimitFilter rateLimitFilter;
+
+    private final AccessLogFilter accessLogFilter;
+
+    private final ScrapeAuthorizationManager scrapeAuthorizationManager;
+
     private CustomUserDetailsService userDetailsService;
 
     @Value("${cors.allowed.origins}")
     private String allowedOrigins;
 
-    public SecurityConfig(JwtFilter jwtFilter, CustomUserDetailsService userDetailsService) {
+    public SecurityConfig(JwtFilter jwtFilter, RateLimitFilter rateLimitFilter, AccessLogFilter accessLogFilter,
+                          ScrapeAuthorizationManager scrapeAuthorizationManager,
+                          CustomUserDetailsService userDetailsService) {
         this.jwtFilter = jwtFilter;
+        this.rateLimitFilter = rateLimitFilter;
+        this.accessLogFilter = accessLogFilter;
+        this.scrapeAuthorizationManager = scrapeAuthorizationManager;
         this.userDetailsService = userDetailsService;
     }
 
@@ -46,6 +70,8 @@ public class SecurityConfig  {
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/api/auth/login", "/api/auth/register", "/error").permitAll()
                         .requestMatchers("/uploads/**").permitAll() // Allow access to uploaded files
+                        .requestMatchers("/actuator/health").permitAll() // Probes carry no token
+                        .requestMatchers("/actuator/prometheus").access(scrapeAuthorizationManager) // Scrape credentials only
                         .requestMatchers("OPTIONS", "/**").permitAll() // Allow preflight requests
                         .anyRequest().authenticated()
                 )
@@ -60,6 +86,10 @@ public class SecurityConfig  {
                 .sessionManagement(session ->
                         session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
 
+                // Same position, added first: requests are logged even when refused, and admitted
+                // before the JWT filter loads users
+                .addFilterBefore(accessLogFilter, UsernamePasswordAuthenticationFilter.class)
+                .addFilterBefore(rateLimitFilter, UsernamePasswordAuthenticationFilter.class)
                 .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class);
         return http.build();
     }
@@ -70,9 +100,32 @@ public class SecurityConfig  {
     }
 
 
+    /**
+     * Hashes are stored as {id}hash. New hashes use password.encoder (bcrypt, pbkdf2, or argon2
+     * when BouncyCastle is on the classpath); older ones, including legacy bcrypt hashes without
+     * a prefix, still match and are rewritten on the next successful login.
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return  new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(
+            @Value("${password.encoder:bcrypt}") String encoderId,
+            @Value("${password.bcrypt.strength:10}") int bcryptStrength,
+            @Value("${password.pbkdf2.iterations:310000}") int pbkdf2Iterations,
+            @Value("${password.queue-timeout:2s}") Duration queueTimeout,
+            @Qualifier(AsyncConfig.PASSWORD_EXECUTOR) AsyncTaskExecutor passwordExecutor) {
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+        encoders.put("bcrypt", bcrypt);
+        encoders.put("pbkdf2", new Pbkdf2PasswordEncoder("", 16, pbkdf2Iterations,
+                Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256));
+        if (ClassUtils.isPresent("org.bouncycastle.crypto.params.Argon2Parameters", null)) {
+            encoders.put("argon2", Argon2PasswordEncoder.defaultsForSpringSecurity_v5_8());
+        }
+        if (!encoders.containsKey(encoderId)) {
+            throw new IllegalStateException("Unknown password.encoder '" + encoderId + "', expected one of " + encoders.keySet());
+        }
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder(encoderId, encoders);
+        delegating.setDefaultPasswordEncoderForMatches(bcrypt);
+        return new BoundedPasswordEncoder(delegating, passwordExecutor, queueTimeout);
     }
 
     @Bean
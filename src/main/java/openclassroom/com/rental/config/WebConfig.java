@@ -1,7 +1,14 @@
 package openclassroom.com.rental.config;
 
+import openclassroom.com.rental.controller.UploadServlet;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.server.Compression;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.boot.web.servlet.server.ConfigurableServletWebServerFactory;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -14,14 +21,44 @@ public class WebConfig implements WebMvcConfigurer {
     @Value("${file.upload-dir}")
     private String uploadDir;
 
+    // Off only to measure against the resource handler it replaced
+    @Value("${uploads.servlet.enabled:true}")
+    private boolean uploadServletEnabled;
+
+    // Make the uploads directory accessible via URL, served by a dedicated servlet
+    // so picture requests skip the DispatcherServlet
+    @Bean
+    public ServletRegistrationBean<UploadServlet> uploadServlet() {
+        Path uploadPath = Paths.get(uploadDir).toAbsolutePath().normalize();
+        ServletRegistrationBean<UploadServlet> registration =
+                new ServletRegistrationBean<>(new UploadServlet(uploadPath), "/uploads/*");
+        registration.setName("uploadServlet");
+        registration.setEnabled(uploadServletEnabled);
+        return registration;
+    }
+
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        // Make the uploads directory accessible via URL
-        Path uploadPath = Paths.get(uploadDir).toAbsolutePath().normalize();
-        String uploadPathUri = uploadPath.toUri().toString();
+        if (!uploadServletEnabled) {
+            registry.addResourceHandler("/uploads/**")
+                    .addResourceLocations(Paths.get(uploadDir).toAbsolutePath().normalize().toUri().toString());
+        }
+    }
 
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations(uploadPathUri);
+    // Same keys as Spring Boot's server.compression.*, but on by default: listings repeat
+    // long descriptions and picture URLs and shrink several times over.
+    // Bodies under the threshold are sent as is, compressing them costs more than it saves.
+    @Bean
+    public WebServerFactoryCustomizer<ConfigurableServletWebServerFactory> compressionCustomizer(
+            @Value("${server.compression.enabled:true}") boolean enabled,
+            @Value("${server.compression.min-response-size:1KB}") DataSize minResponseSize,
+            @Value("${server.compression.mime-types:application/json,text/html,text/plain,text/css,application/javascript}") String[] mimeTypes) {
+        return factory -> {
+            Compression compression = new Compression();
+            compression.setEnabled(enabled);
+            compression.setMinResponseSize(minResponseSize);
+            compression.setMimeTypes(mimeTypes);
+            factory.setCompression(compression);
+        };
     }
 }
-
@@ -3,11 +3,12 @@ import jakarta.validation.Valid;
 import openclassroom.com.rental.dto.AuthResponse;
 import openclassroom.com.rental.dto.RegisterRequest;
 import openclassroom.com.rental.dto.auth.LoginRequest;
+import openclassroom.com.rental.dto.user.UserAccount;
 import openclassroom.com.rental.entity.User;
 import openclassroom.com.rental.exception.ResourceNotFoundException;
-import openclassroom.com.rental.repository.CustomUserDetailsService;
-import openclassroom.com.rental.repository.UserRepository;
+import openclassroom.com.rental.security.AuthenticatedUser;
 import openclassroom.com.rental.security.JwtService;
+import openclassroom.com.rental.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -25,33 +26,24 @@ import java.util.Map;
 @RequestMapping("/api/auth")
 public class AuthController {
     private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
-    private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authenticationManager;
     private final JwtService jwtService;
-    private final CustomUserDetailsService userDetailsService;
+    private final UserService userService;
     public AuthController(
-            UserRepository userRepository,
             PasswordEncoder passwordEncoder,
             AuthenticationManager authenticationManager,
             JwtService jwtService,
-            CustomUserDetailsService userDetailsService) {
-        this.userRepository = userRepository;
+            UserService userService) {
         this.passwordEncoder = passwordEncoder;
         this.authenticationManager = authenticationManager;
         this.jwtService = jwtService;
-        this.userDetailsService = userDetailsService;
+        this.userService = userService;
     }
     @PostMapping("/register")
     public ResponseEntity<?> register(@Valid @RequestBody RegisterRequest req) {
-        if (userRepository.findByEmail(req.getEmail()).isPresent()) {
-            return ResponseEntity.status(HttpStatus.CONFLICT)
-                    .body(Map.of("message", "Email is already in use"));
-        }
-        if (userRepository.findByName(req.getName()).isPresent()) {
-            return ResponseEntity.status(HttpStatus.CONFLICT)
-                    .body(Map.of("message", "Name is already in use"));
-        }
+        // Checked before hashing so taken emails are refused cheaply; the insert settles races
+        userService.checkAvailable(req.getEmail(), req.getName());
         User user = new User();
         user.setName(req.getName());
         user.setEmail(req.getEmail());
@@ -59,36 +51,45 @@ public class AuthController {
         user.setCreatedAt(new Timestamp((System.currentTimeMillis())));
         user.setUpdatedAt(new Timestamp(System.currentTimeMillis()));
 
-        userRepository.save(user);
-        UserDetails userDetails = userDetailsService.loadUserByUsername(user.getEmail());
-        String jwt = jwtService.generateToken(userDetails);
+        User saved = userService.register(user);
+        String jwt = jwtService.generateToken(AuthenticatedUser.from(saved));
 
-        logger.info("User registered successfully: {}", req.getEmail());
+        logger.debug("User {} registered successfully", saved.getId());
         return ResponseEntity.status(HttpStatus.CREATED)
                 .body(new AuthResponse(jwt));
     }
     @PostMapping("/login")
     public ResponseEntity<AuthResponse> login(@Valid @RequestBody LoginRequest authRequest) {
         logger.debug("Login attempt for email: {}", authRequest.getEmail());
-        authenticationManager.authenticate(
+        Authentication authentication = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(
                         authRequest.getEmail(),
                         authRequest.getPassword()
                 )
         );
         logger.debug("Authentication successful for: {}", authRequest.getEmail());
-        UserDetails userDetails = userDetailsService.loadUserByUsername(authRequest.getEmail());
+        // The authenticated principal already carries the user id and token version
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
         String jwt = jwtService.generateToken(userDetails);
-        logger.info("JWT token generated successfully for: {}", authRequest.getEmail());
+        logger.debug("JWT token generated successfully for: {}", authRequest.getEmail());
         return ResponseEntity.ok(new AuthResponse(jwt));
     }
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(Authentication authentication) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof AuthenticatedUser user)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        // Revokes every token issued to this user, on all devices
+        userService.revokeTokens(user.getId());
+        return ResponseEntity.noContent().build();
+    }
     @GetMapping("/me")
     public ResponseEntity<?> getCurrentUser(Authentication authentication) {
         if (authentication == null || authentication.getName() == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "Not authenticated"));
         }
         String email = authentication.getName();
-        User user = userRepository.findByEmail(email)
+        UserAccount user = userService.findByEmail(email)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
         return ResponseEntity.ok(user);
     }
@@ -1,35 +1,97 @@
 package openclassroom.com.rental.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import openclassroom.com.rental.dto.KeysetCursor;
+import openclassroom.com.rental.dto.MessageBatchRequest;
 import openclassroom.com.rental.dto.MessageRequest;
 import openclassroom.com.rental.dto.MessageResponse;
+import openclassroom.com.rental.dto.message.ListMessageResponse;
+import openclassroom.com.rental.dto.message.MessageDetailResponse;
 import openclassroom.com.rental.entity.Message;
 import openclassroom.com.rental.service.MessageService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/messages")
 public class MessageController {
+    private static final int MAX_PAGE_SIZE = 100;
 
     private final MessageService messageService;
+    private final ObjectMapper objectMapper;
     @Autowired
-    public MessageController(MessageService messageService){
+    public MessageController(MessageService messageService, ObjectMapper objectMapper){
         this.messageService = messageService;
+        this.objectMapper = objectMapper;
     }
     @PostMapping
     public ResponseEntity<MessageResponse> sendMessage(@Valid @RequestBody MessageRequest request) {
        messageService.saveMessage(request);
        return ResponseEntity.ok(new MessageResponse("Message send with success"));
     }
+    @PostMapping("/batch")
+    public ResponseEntity<MessageResponse> sendMessages(@Valid @RequestBody MessageBatchRequest request) {
+        int count = messageService.saveMessages(request.getMessages());
+        return ResponseEntity.ok(new MessageResponse(count + " messages send with success"));
+    }
     @GetMapping
     public ResponseEntity<List<Message>> getAllMessages() {
         List<Message> list = messageService.findAllMessages();
         return ResponseEntity.ok(list);
     }
+    // Writes every message row by row instead of building the whole list in memory
+    @GetMapping("/stream")
+    public void streamAllMessages(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            messageService.streamAllMessages(message -> {
+                try {
+                    generator.writeObject(message);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            generator.writeEndArray();
+        }
+    }
+    @GetMapping("/rentals/{rentalId}")
+    public ResponseEntity<ListMessageResponse> getRentalMessages(
+            @PathVariable Integer rentalId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(page(
+                messageService.findRentalMessagesPage(rentalId, KeysetCursor.decode(cursor), pageSize + 1), pageSize));
+    }
+    @GetMapping("/users/{userId}")
+    public ResponseEntity<ListMessageResponse> getUserMessages(
+            @PathVariable Integer userId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(page(
+                messageService.findUserMessagesPage(userId, KeysetCursor.decode(cursor), pageSize + 1), pageSize));
+    }
+    // The service fetched one extra row to know whether a next page exists
+    private static ListMessageResponse page(List<MessageDetailResponse> messages, int pageSize) {
+        String next = null;
+        if (messages.size() > pageSize) {
+            messages = messages.subList(0, pageSize);
+            MessageDetailResponse last = messages.get(pageSize - 1);
+            next = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new ListMessageResponse(messages, next);
+    }
     @GetMapping("/{id}")
     public ResponseEntity<Message> getMessageById(@PathVariable Integer id) {
         return messageService.findMessageById(id)
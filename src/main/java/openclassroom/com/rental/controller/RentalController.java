@@ -1,70 +1,169 @@
 package openclassroom.com.rental.controller;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.servlet.http.HttpServletResponse;
+import openclassroom.com.rental.dto.KeysetCursor;
 import openclassroom.com.rental.dto.rental.ListRentalResponse;
+import openclassroom.com.rental.dto.rental.RentalFilter;
 import openclassroom.com.rental.dto.rental.RentalResponse;
+import openclassroom.com.rental.dto.rental.RentalsVersion;
 import openclassroom.com.rental.entity.Rental;
 import openclassroom.com.rental.entity.User;
 import openclassroom.com.rental.exception.BadRequestException;
 import openclassroom.com.rental.exception.ResourceNotFoundException;
 import openclassroom.com.rental.exception.UnauthorizedException;
+import openclassroom.com.rental.security.AuthenticatedUser;
 import openclassroom.com.rental.service.FileStorageService;
+import openclassroom.com.rental.service.ImageVariantService;
+import openclassroom.com.rental.service.RentalJsonCache;
+import openclassroom.com.rental.service.RentalSearchService;
 import openclassroom.com.rental.service.RentalService;
+import openclassroom.com.rental.service.RentalsVersionCache;
 import openclassroom.com.rental.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 @RestController
 @RequestMapping("/api/rentals")
 public class RentalController {
+    private static final Logger logger = LoggerFactory.getLogger(RentalController.class);
+    private static final int MAX_PAGE_SIZE = 100;
+    // Responses are per user, and clients must check back before reusing them
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
     private final RentalService rentalService;
+    private final RentalSearchService rentalSearchService;
     private final UserService userService;
     private final FileStorageService fileStorageService;
+    private final ImageVariantService imageVariantService;
+    private final RentalJsonCache rentalJsonCache;
+    private final RentalsVersionCache rentalsVersionCache;
+    private final ObjectMapper objectMapper;
     public RentalController(
             RentalService rentalService,
+            RentalSearchService rentalSearchService,
             UserService userService,
-            FileStorageService fileStorageService) {
+            FileStorageService fileStorageService,
+            ImageVariantService imageVariantService,
+            RentalJsonCache rentalJsonCache,
+            RentalsVersionCache rentalsVersionCache,
+            ObjectMapper objectMapper) {
         this.rentalService = rentalService;
+        this.rentalSearchService = rentalSearchService;
         this.userService = userService;
         this.fileStorageService = fileStorageService;
+        this.imageVariantService = imageVariantService;
+        this.rentalJsonCache = rentalJsonCache;
+        this.rentalsVersionCache = rentalsVersionCache;
+        this.objectMapper = objectMapper;
     }
+    // The body is assembled from cached per-rental JSON rather than serialized on each request
     @GetMapping
-    public ResponseEntity<ListRentalResponse> getAllRentals(Authentication authentication) {
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+            schema = @Schema(implementation = ListRentalResponse.class)))
+    public ResponseEntity<byte[]> getAllRentals(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            RentalFilter filter,
+            Authentication authentication,
+            WebRequest webRequest) {
         if (authentication == null || authentication.getName() == null) {
             throw new UnauthorizedException("Not authenticated");
         }
-        List<Rental> rentals = rentalService.findAllRentals();
-        List<RentalResponse> rentalResponses = rentals.stream()
-                .map(this::convertToResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(new ListRentalResponse(rentalResponses));
+        // Any committed change to the table changes every page's ETag (see RentalsVersion).
+        // No Last-Modified here: dates miss deletions and updates stamped by a clock behind.
+        if (webRequest.checkNotModified(collectionETag(rentalsVersionCache.get()))) {
+            return null;
+        }
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // Fetch one extra row to know whether a next page exists
+        List<RentalResponse> rentals = rentalService.findRentalsPage(filter, KeysetCursor.decode(cursor), pageSize + 1);
+        String next = null;
+        if (rentals.size() > pageSize) {
+            rentals = rentals.subList(0, pageSize);
+            RentalResponse last = rentals.get(pageSize - 1);
+            next = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return ResponseEntity.ok()
+                .cacheControl(REVALIDATE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(rentalJsonCache.writePage(rentals, next));
+    }
+    /**
+     * Same document shape as the listing, but with every rental, written row by row
+     * so memory use does not depend on the table size.
+     */
+    @GetMapping("/stream")
+    public void streamAllRentals(HttpServletResponse response, Authentication authentication) throws IOException {
+        if (authentication == null || authentication.getName() == null) {
+            throw new UnauthorizedException("Not authenticated");
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("rentals");
+            rentalService.streamAllRentals(rental -> {
+                try {
+                    generator.writeObject(rental);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
     }
-    private RentalResponse convertToResponse(Rental rental) {
-        RentalResponse response = new RentalResponse();
-        response.setId(rental.getId());
-        response.setName(rental.getName());
-        response.setSurface(rental.getSurface());
-        response.setPrice(rental.getPrice());
-        response.setDescription(rental.getDescription());
-        response.setPicture(rental.getPictureUrl());
-        response.setOwner_id(rental.getOwner().getId());
-        response.setCreatedAt(rental.getCreatedAt());
-        response.setUpdatedAt(rental.getUpdatedAt());
-        return response;
+    @GetMapping("/search")
+    public ResponseEntity<ListRentalResponse> searchRentals(
+            @RequestParam("q") String query,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            Authentication authentication) {
+        if (authentication == null || authentication.getName() == null) {
+            throw new UnauthorizedException("Not authenticated");
+        }
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(rentalSearchService.search(query, Math.max(0, page), pageSize));
     }
     @GetMapping("/{id}")
-    public ResponseEntity<RentalResponse> getRentalById(@PathVariable Integer id, Authentication authentication) {
+    public ResponseEntity<RentalResponse> getRentalById(@PathVariable Integer id, Authentication authentication,
+                                                        WebRequest webRequest) {
         if (authentication == null || authentication.getName() == null) {
             throw new UnauthorizedException("Not authenticated");
         }
-        Rental rental = rentalService.findRentalById(id)
+        // One statement either way: the validators come with the row, and a 304 skips serializing it
+        RentalResponse response = rentalService.findRentalResponseById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Rental not found with id: " + id));
-        RentalResponse response = convertToResponse(rental);
-        return ResponseEntity.ok(response);
+        Timestamp lastModified = response.getUpdatedAt();
+        if (lastModified != null
+                && webRequest.checkNotModified(rentalETag(id, lastModified), lastModified.getTime())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(REVALIDATE).body(response);
+    }
+    // Weak validators: the body is the same for a given version, but not byte for byte once compressed
+    private static String rentalETag(Integer id, Timestamp updatedAt) {
+        Instant instant = updatedAt.toInstant();
+        return "W/\"" + id + "-" + instant.getEpochSecond() + "." + instant.getNano() + "\"";
+    }
+    private static String collectionETag(RentalsVersion version) {
+        return "W/\"" + version.getCount() + "-" + version.getMaxId() + "-" + version.getRevisions() + "\"";
     }
     @PostMapping
     public ResponseEntity<Map<String, String>> createRental(
@@ -77,10 +176,8 @@ public class RentalController {
         if (picture == null || picture.isEmpty()) {
             throw new BadRequestException("Picture is required");
         }
-        // Get the current user from authentication
-        String email = authentication.getName();
-        User owner = userService.findByEmail(email)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+        // The principal carries the user id: the owner is only needed as a foreign key
+        User owner = userService.getUserReference(currentUserId(authentication));
         // Store the file and get the url
         String finalPictureUrl = fileStorageService.storeFile(picture);
         Rental rental = new Rental();
@@ -93,6 +190,7 @@ public class RentalController {
         rental.setCreatedAt(new Timestamp(System.currentTimeMillis()));
         rental.setUpdatedAt(new Timestamp(System.currentTimeMillis()));
         rentalService.saveRental(rental);
+        scheduleVariants(rental.getId(), finalPictureUrl);
         return ResponseEntity.ok(Map.of("message", "Rental created successfully"));
     }
     @PutMapping("/{id}")
@@ -104,28 +202,38 @@ public class RentalController {
             @RequestParam(value = "picture", required = false) MultipartFile picture,
             @RequestParam("description") String description,
             Authentication authentication) {
-        // Find rental
-        Rental rental = rentalService.findRentalById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Rental not found with id: " + id));
-        // Verify ownership
-        String email = authentication.getName();
-        if (!rental.getOwner().getEmail().equals(email)) {
-            throw new UnauthorizedException("You don't have permission to update this rental");
-        }
-        // Update rental fields
-        rental.setName(name);
-        rental.setSurface(surface);
-        rental.setPrice(price);
-        rental.setDescription(description);
+        Integer ownerId = currentUserId(authentication);
         // Handle picture upload if provided
+        String newPictureUrl = null;
         if (picture != null && !picture.isEmpty()) {
-            String newPictureUrl = fileStorageService.storeFile(picture);
-            rental.setPictureUrl(newPictureUrl);
+            newPictureUrl = fileStorageService.storeFile(picture);
+        }
+        // Ownership is checked by the UPDATE itself; the lookup below only runs when it matched nothing
+        if (!rentalService.updateOwnedRental(id, ownerId, name, surface, price, description, newPictureUrl)) {
+            if (!rentalService.existsRental(id)) {
+                throw new ResourceNotFoundException("Rental not found with id: " + id);
+            }
+            throw new UnauthorizedException("You don't have permission to update this rental");
+        }
+        if (newPictureUrl != null) {
+            scheduleVariants(id, newPictureUrl);
         }
-        rental.setUpdatedAt(new Timestamp(System.currentTimeMillis()));
-        rentalService.saveRental(rental);
         return ResponseEntity.ok(Map.of("message", "Rental updated!"));
     }
+    private static Integer currentUserId(Authentication authentication) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof AuthenticatedUser user)) {
+            throw new UnauthorizedException("Not authenticated");
+        }
+        return user.getId();
+    }
+    private void scheduleVariants(Integer rentalId, String pictureUrl) {
+        try {
+            imageVariantService.processRentalPicture(rentalId, pictureUrl);
+        } catch (TaskRejectedException ex) {
+            // Image workers are saturated: the original picture keeps being served
+            logger.warn("Picture processing queue full, skipping variants for rental {}", rentalId);
+        }
+    }
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteRental(@PathVariable Integer id) {
         return rentalService.findRentalById(id)
@@ -0,0 +1,199 @@
+package openclassroom.com.rental.controller;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves /uploads/* outside the Spring MVC dispatcher.
+ * Bodies go through Tomcat's sendfile when the connector supports it and
+ * through FileChannel.transferTo otherwise. Content-addressed files get a strong
+ * ETag from their hash and are cached as immutable; precompressed .br/.gz
+ * siblings are used when the client accepts them, with "-br"/"-gz" appended to the ETag.
+ */
+public class UploadServlet extends HttpServlet {
+    private static final Pattern HASHED_NAME = Pattern.compile("([0-9a-f]{64}(?:-thumb|-full)?)\\.[A-Za-z0-9]+");
+    private static final Pattern SINGLE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String SHORT_LIVED = "public, max-age=86400";
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final Path uploadPath;
+
+    public UploadServlet(Path uploadPath) {
+        this.uploadPath = uploadPath;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(request, response, true);
+    }
+
+    @Override
+    protected void doHead(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(request, response, false);
+    }
+
+    private void serve(HttpServletRequest request, HttpServletResponse response, boolean withBody) throws IOException {
+        Path file = resolve(request.getPathInfo());
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String name = file.getFileName().toString();
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        Matcher hashed = HASHED_NAME.matcher(name);
+        // Each encoding is a different representation, so it gets its own validator
+        Path encoded = precompressed(file, request.getHeader("Accept-Encoding"));
+        String encoding = encoded == null ? null : encoded.getFileName().toString().endsWith(".br") ? "br" : "gzip";
+        String etagSuffix = encoding == null ? "" : encoding.equals("br") ? "-br" : "-gz";
+        String etag = hashed.matches()
+                ? "\"" + hashed.group(1) + etagSuffix + "\""
+                : "W/\"" + Files.size(file) + "-" + lastModified + etagSuffix + "\"";
+
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+        response.setHeader("Cache-Control", hashed.matches() ? IMMUTABLE : SHORT_LIVED);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("Vary", "Accept-Encoding");
+
+        if (matchesIfNoneMatch(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        String contentType = getServletContext().getMimeType(name);
+        response.setContentType(contentType != null ? contentType : "application/octet-stream");
+
+        // Precompressed siblings are served whole; ranges only apply to the identity encoding
+        if (encoded != null) {
+            response.setHeader("Content-Encoding", encoding);
+            send(request, response, encoded, 0, Files.size(encoded), withBody);
+            return;
+        }
+
+        long length = Files.size(file);
+        String range = request.getHeader("Range");
+        String ifRange = request.getHeader("If-Range");
+        // If-Range only accepts a strong validator: a weak or different one gets the whole file
+        if (range == null || (ifRange != null && (ifRange.startsWith("W/") || !ifRange.equals(etag)))) {
+            send(request, response, file, 0, length, withBody);
+            return;
+        }
+        Matcher matcher = SINGLE_RANGE.matcher(range.trim());
+        if (!matcher.matches()) {
+            // Multiple ranges or unknown units: answer with the whole file
+            send(request, response, file, 0, length, withBody);
+            return;
+        }
+        long start;
+        long end;
+        if (matcher.group(1).isEmpty()) {
+            if (matcher.group(2).isEmpty()) {
+                send(request, response, file, 0, length, withBody);
+                return;
+            }
+            long suffix = Long.parseLong(matcher.group(2));
+            start = Math.max(0, length - suffix);
+            end = length - 1;
+        } else {
+            start = Long.parseLong(matcher.group(1));
+            end = matcher.group(2).isEmpty() ? length - 1 : Math.min(Long.parseLong(matcher.group(2)), length - 1);
+        }
+        if (start >= length || start > end) {
+            response.setHeader("Content-Range", "bytes */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        send(request, response, file, start, end + 1, withBody);
+    }
+
+    private Path resolve(String pathInfo) {
+        if (pathInfo == null || pathInfo.length() < 2) {
+            return null;
+        }
+        String name = pathInfo.substring(1);
+        if (name.contains("/") || name.contains("\\") || name.startsWith(".")) {
+            return null;
+        }
+        Path file = uploadPath.resolve(name).normalize();
+        if (!file.startsWith(uploadPath) || !Files.isRegularFile(file)) {
+            return null;
+        }
+        return file;
+    }
+
+    private static boolean matchesIfNoneMatch(String header, String etag) {
+        if (header == null) {
+            return false;
+        }
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || value.equals(etag) || value.equals(opaque) || value.equals("W/" + opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Path precompressed(Path file, String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        if (acceptEncoding.contains("br")) {
+            Path brotli = file.resolveSibling(file.getFileName() + ".br");
+            if (Files.isRegularFile(brotli)) {
+                return brotli;
+            }
+        }
+        if (acceptEncoding.contains("gzip")) {
+            Path gzip = file.resolveSibling(file.getFileName() + ".gz");
+            if (Files.isRegularFile(gzip)) {
+                return gzip;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes bytes [start, end) of the file.
+     */
+    private static void send(HttpServletRequest request, HttpServletResponse response, Path file,
+                             long start, long end, boolean withBody) throws IOException {
+        response.setContentLengthLong(end - start);
+        if (!withBody) {
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Tomcat writes the file straight from the page cache once the servlet returns
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, out);
+            }
+        }
+    }
+}
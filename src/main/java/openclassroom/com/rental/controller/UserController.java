@@ -1,7 +1,7 @@
 package openclassroom.com.rental.controller;
 
-import openclassroom.com.rental.entity.User;
-import openclassroom.com.rental.repository.UserRepository;
+import openclassroom.com.rental.dto.user.UserAccount;
+import openclassroom.com.rental.service.UserService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -11,15 +11,15 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api/user")
 public class UserController {
 
-    private final UserRepository userRepository;
+    private final UserService userService;
 
-    public UserController(UserRepository userRepository){
-        this.userRepository = userRepository;
+    public UserController(UserService userService){
+        this.userService = userService;
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<User> getUser(@PathVariable Integer id) {
-        return userRepository.findById(id)
+    public ResponseEntity<UserAccount> getUser(@PathVariable Integer id) {
+        return userService.findUserById(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
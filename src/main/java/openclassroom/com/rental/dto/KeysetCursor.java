@@ -0,0 +1,49 @@
+package openclassroom.com.rental.dto;
+
+import openclassroom.com.rental.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+/**
+ * Opaque position in a list ordered by (created_at DESC, id DESC).
+ * Encoded as url-safe base64 of "millis:id" so clients just echo it back.
+ */
+public class KeysetCursor {
+    private final Timestamp createdAt;
+    private final Integer id;
+
+    public KeysetCursor(Timestamp createdAt, Integer id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    public Timestamp getCreatedAt() {
+        return createdAt;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String encode() {
+        String raw = createdAt.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            long millis = Long.parseLong(raw.substring(0, separator));
+            int id = Integer.parseInt(raw.substring(separator + 1));
+            return new KeysetCursor(new Timestamp(millis), id);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+}
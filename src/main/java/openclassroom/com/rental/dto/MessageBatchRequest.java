@@ -0,0 +1,17 @@
+package openclassroom.com.rental.dto;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+public class MessageBatchRequest {
+    @NotEmpty(message = "Messages are required")
+    @Size(max = 1000, message = "At most 1000 messages per batch")
+    private List<@NotNull(message = "Messages must not be null") @Valid MessageRequest> messages;
+    public List<MessageRequest> getMessages() {
+        return messages;
+    }
+    public void setMessages(List<MessageRequest> messages) {
+        this.messages = messages;
+    }
+}
@@ -0,0 +1,33 @@
+package openclassroom.com.rental.dto.message;
+
+import java.util.List;
+
+public class ListMessageResponse {
+    private List<MessageDetailResponse> messages;
+    // cursor of the following page, null on the last page
+    private String next;
+
+    public ListMessageResponse() {
+    }
+
+    public ListMessageResponse(List<MessageDetailResponse> messages, String next) {
+        this.messages = messages;
+        this.next = next;
+    }
+
+    public List<MessageDetailResponse> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<MessageDetailResponse> messages) {
+        this.messages = messages;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
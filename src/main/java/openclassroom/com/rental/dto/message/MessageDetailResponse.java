@@ -0,0 +1,74 @@
+package openclassroom.com.rental.dto.message;
+
+import java.sql.Timestamp;
+
+public class MessageDetailResponse {
+    private Integer id;
+    private Integer rental_id;
+    private Integer user_id;
+    private String message;
+    private Timestamp createdAt;
+    private Timestamp updatedAt;
+
+    public MessageDetailResponse() {
+    }
+
+    // Used by JPQL constructor expressions, reads the foreign keys without loading rentals or users
+    public MessageDetailResponse(Integer id, Integer rental_id, Integer user_id, String message,
+                                 Timestamp createdAt, Timestamp updatedAt) {
+        this.id = id;
+        this.rental_id = rental_id;
+        this.user_id = user_id;
+        this.message = message;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public Integer getRental_id() {
+        return rental_id;
+    }
+
+    public void setRental_id(Integer rental_id) {
+        this.rental_id = rental_id;
+    }
+
+    public Integer getUser_id() {
+        return user_id;
+    }
+
+    public void setUser_id(Integer user_id) {
+        this.user_id = user_id;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public Timestamp getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Timestamp createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Timestamp getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Timestamp updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -6,12 +6,19 @@ import java.util.List;
 
 public class ListRentalResponse {
     private List <RentalResponse> rentals;
+    // cursor of the following page, null on the last page
+    private String next;
 
 
     public ListRentalResponse(List<RentalResponse> rentals) {
         this.rentals = rentals;
     }
 
+    public ListRentalResponse(List<RentalResponse> rentals, String next) {
+        this.rentals = rentals;
+        this.next = next;
+    }
+
     public ListRentalResponse() {
 
     }
@@ -24,4 +31,12 @@ public class ListRentalResponse {
         this.rentals = rentals;
     }
 
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+
 }
@@ -0,0 +1,51 @@
+package openclassroom.com.rental.dto.rental;
+
+import java.math.BigDecimal;
+
+public class RentalFilter {
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private BigDecimal minSurface;
+    private BigDecimal maxSurface;
+    private Integer ownerId;
+
+    public BigDecimal getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(BigDecimal minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public BigDecimal getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(BigDecimal maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public BigDecimal getMinSurface() {
+        return minSurface;
+    }
+
+    public void setMinSurface(BigDecimal minSurface) {
+        this.minSurface = minSurface;
+    }
+
+    public BigDecimal getMaxSurface() {
+        return maxSurface;
+    }
+
+    public void setMaxSurface(BigDecimal maxSurface) {
+        this.maxSurface = maxSurface;
+    }
+
+    public Integer getOwnerId() {
+        return ownerId;
+    }
+
+    public void setOwnerId(Integer ownerId) {
+        this.ownerId = ownerId;
+    }
+}
@@ -29,6 +29,20 @@ public class RentalResponse {
 
     }
 
+    // Used by JPQL constructor expressions so listing reads owner_id without touching users
+    public RentalResponse(Integer id, String name, BigDecimal surface, BigDecimal price, String picture,
+                          String description, Integer owner_id, Timestamp createdAt, Timestamp updatedAt) {
+        this.id = id;
+        this.name = name;
+        this.surface = surface;
+        this.price = price;
+        this.picture = picture;
+        this.description = description;
+        this.owner_id = owner_id;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+
     public Integer getId() {
              return id;
          }
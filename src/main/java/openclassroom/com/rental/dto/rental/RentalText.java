@@ -0,0 +1,28 @@
+package openclassroom.com.rental.dto.rental;
+
+/**
+ * The searchable fields of a rental.
+ */
+public class RentalText {
+    private final Integer id;
+    private final String name;
+    private final String description;
+
+    public RentalText(Integer id, String name, String description) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
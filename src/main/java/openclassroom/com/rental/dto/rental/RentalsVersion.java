@@ -0,0 +1,30 @@
+package openclassroom.com.rental.dto.rental;
+
+/**
+ * Summary of the whole rentals table that changes whenever a rental is created, updated or deleted.
+ * Inserts move the highest id, updates raise the sum of the rows' revisions and deletes lower the count.
+ * None of it depends on a clock, so it holds across instances and for updates made in the same millisecond.
+ */
+public class RentalsVersion {
+    private final long count;
+    private final Integer maxId;
+    private final long revisions;
+
+    public RentalsVersion(long count, Integer maxId, long revisions) {
+        this.count = count;
+        this.maxId = maxId;
+        this.revisions = revisions;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Integer getMaxId() {
+        return maxId;
+    }
+
+    public long getRevisions() {
+        return revisions;
+    }
+}
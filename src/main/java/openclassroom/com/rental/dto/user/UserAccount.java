@@ -0,0 +1,68 @@
+package openclassroom.com.rental.dto.user;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import openclassroom.com.rental.entity.User;
+
+import java.sql.Timestamp;
+
+/**
+ * Immutable copy of a user, safe to cache and share between threads.
+ * Serialized like the {@link User} entity; the password hash and token version stay out of the JSON.
+ */
+public class UserAccount {
+    private final Integer id;
+    private final String name;
+    private final String email;
+    private final String password;
+    private final int tokenVersion;
+    private final long createdAt;
+    private final long updatedAt;
+
+    private UserAccount(User user) {
+        this.id = user.getId();
+        this.name = user.getName();
+        this.email = user.getEmail();
+        this.password = user.getPassword();
+        this.tokenVersion = user.getTokenVersion();
+        this.createdAt = user.getCreatedAt() == null ? 0 : user.getCreatedAt().getTime();
+        this.updatedAt = user.getUpdatedAt() == null ? 0 : user.getUpdatedAt().getTime();
+    }
+
+    public static UserAccount from(User user) {
+        return new UserAccount(user);
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    @JsonIgnore
+    public String getPassword() {
+        return password;
+    }
+
+    @JsonIgnore
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
+    // Timestamp is mutable, so each caller gets its own
+    @JsonProperty("created_at")
+    public Timestamp getCreatedAt() {
+        return createdAt == 0 ? null : new Timestamp(createdAt);
+    }
+
+    @JsonProperty("updated_at")
+    public Timestamp getUpdatedAt() {
+        return updatedAt == 0 ? null : new Timestamp(updatedAt);
+    }
+}
@@ -6,7 +6,10 @@ import jakarta.persistence.*;
 import java.sql.Timestamp;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_rental_created_id", columnList = "rental_id, created_at, id"),
+        @Index(name = "idx_messages_user_created_id", columnList = "user_id, created_at, id")
+})
 public class Message {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
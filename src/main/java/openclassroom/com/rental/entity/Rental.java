@@ -8,7 +8,13 @@ import java.math.BigDecimal;
 import java.sql.Timestamp;
 
 @Entity
-@Table (name = "rentals")
+@Table (name = "rentals", indexes = {
+        @Index(name = "idx_rentals_created_id", columnList = "create_at, id"),
+        @Index(name = "idx_rentals_owner_created_id", columnList = "owner_id, create_at, id"),
+        @Index(name = "idx_rentals_price", columnList = "price"),
+        @Index(name = "idx_rentals_surface", columnList = "surface"),
+        @Index(name = "idx_rentals_updated", columnList = "updated_at")
+})
 public class Rental {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -18,6 +24,9 @@ public class Rental {
     private BigDecimal price;
     @Column(name = "picture")
     private String pictureUrl;
+    // small rendition used by listings, filled in once the picture has been processed
+    @Column(name = "thumbnail_url")
+    private String thumbnailUrl;
     @Column(length = 2000)
     private String description;
     //many to one relationship with the user
@@ -30,6 +39,9 @@ public class Rental {
     @Column(name = "updated_at")
     @JsonProperty("updated_at")
     private Timestamp updatedAt;
+    // Bumped by every write, unlike updated_at which comes from a clock; null on rows older than the column
+    @JsonIgnore
+    private Long revision;
 
     public Integer getId() {
         return id;
@@ -71,6 +83,14 @@ public class Rental {
         this.pictureUrl = pictureUrl;
     }
 
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+
+    public void setThumbnailUrl(String thumbnailUrl) {
+        this.thumbnailUrl = thumbnailUrl;
+    }
+
     public String getDescription() {
         return description;
     }
@@ -103,15 +123,25 @@ public class Rental {
         this.updatedAt = updatedAt;
     }
 
+    public Long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(Long revision) {
+        this.revision = revision;
+    }
+
     @PrePersist
     protected void onCreate() {
         Timestamp now = new Timestamp(System.currentTimeMillis());
         this.createdAt = now;
         this.updatedAt = now;
+        this.revision = 0L;
     }
 
     @PreUpdate
     protected void onUpdate() {
         this.updatedAt = new Timestamp(System.currentTimeMillis());
+        this.revision = revision == null ? 1L : revision + 1;
     }
 }
@@ -1,10 +1,12 @@
 package openclassroom.com.rental.entity;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import java.sql.Timestamp;
 @Entity
-@Table(name= "users")
+@Table(name= "users", uniqueConstraints = @UniqueConstraint(name = User.EMAIL_CONSTRAINT, columnNames = "email"))
 public class User {
+    public static final String EMAIL_CONSTRAINT = "uk_users_email";
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
@@ -13,6 +15,10 @@ public class User {
     private String email;
     @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private String password;
+    // bumped to revoke every token issued before
+    @Column(name = "token_version")
+    @JsonIgnore
+    private Integer tokenVersion = 0;
     @Column(name ="created_at")
     @JsonProperty("created_at")
     private Timestamp createdAt;
@@ -43,6 +49,12 @@ public class User {
     public void setPassword(String password) {
         this.password = password;
     }
+    public int getTokenVersion() {
+        return tokenVersion == null ? 0 : tokenVersion;
+    }
+    public void setTokenVersion(Integer tokenVersion) {
+        this.tokenVersion = tokenVersion;
+    }
     public Timestamp getCreatedAt() {
         return createdAt;
     }
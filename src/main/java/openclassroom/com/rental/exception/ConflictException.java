@@ -0,0 +1,6 @@
+package openclassroom.com.rental.exception;
+public class ConflictException extends RuntimeException {
+    public ConflictException(String message) {
+        super(message);
+    }
+}
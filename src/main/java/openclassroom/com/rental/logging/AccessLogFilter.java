@@ -0,0 +1,191 @@
+package openclassroom.com.rental.logging;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.ServletResponseWrapper;
+import jakarta.servlet.http.HttpServletMapping;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.MappingMatch;
+import openclassroom.com.rental.security.AuthenticatedUser;
+import org.apache.catalina.connector.ResponseFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.PathContainer;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes one JSON line per request to the "access" logger: method, route template, status,
+ * latency, user id, database time and response bytes (before compression).
+ * Runs ahead of the rate limiter and the JWT filter, so refused requests are logged too.
+ * logback-spring.xml hands the lines to an asynchronous appender that drops them rather
+ * than blocking requests when its queue is full. Set logging.level.access=OFF to turn it off.
+ */
+@Component
+public class AccessLogFilter extends OncePerRequestFilter {
+    static final String LOGGER_NAME = "access";
+    private static final Logger accessLog = LoggerFactory.getLogger(LOGGER_NAME);
+
+    private final List<SampleRate> sampleRates;
+
+    // A route pattern and the fraction of its requests to log, e.g. "/uploads/**=0.1"
+    private record SampleRate(PathPattern pattern, double rate) {
+    }
+
+    public AccessLogFilter(@Value("${access-log.sample-rates:}") String[] sampleRates) {
+        this.sampleRates = parse(sampleRates);
+    }
+
+    private static List<SampleRate> parse(String[] sampleRates) {
+        List<SampleRate> parsed = new ArrayList<>(sampleRates.length);
+        for (String sampleRate : sampleRates) {
+            if (sampleRate.isBlank()) {
+                continue;
+            }
+            String[] patternAndRate = sampleRate.trim().split("=", 2);
+            double rate = patternAndRate.length == 2 ? Double.parseDouble(patternAndRate[1].trim()) : -1;
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("Invalid access-log sample rate '" + sampleRate + "', expected pattern=fraction");
+            }
+            parsed.add(new SampleRate(PathPatternParser.defaultInstance.parse(patternAndRate[0].trim()), rate));
+        }
+        return parsed;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !accessLog.isInfoEnabled();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        DbTimeListener.begin();
+        try {
+            chain.doFilter(request, response);
+            failed = false;
+        } finally {
+            long dbNanos = DbTimeListener.finish();
+            // Read now: the security context is cleared once the filter chain unwinds
+            Integer userId = currentUserId();
+            if (!failed && request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        log(request, response, response.getStatus(), start, dbNanos, userId);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                // An exception still on its way to the container ends as a 500
+                log(request, response, failed ? 500 : response.getStatus(), start, dbNanos, userId);
+            }
+        }
+    }
+
+    private void log(HttpServletRequest request, HttpServletResponse response, int status,
+                     long start, long dbNanos, Integer userId) {
+        // Server errors are always logged, whatever the sample rate of their route
+        double rate = status >= 500 ? 1 : sampleRate(request.getRequestURI());
+        if (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(192);
+        line.append("\"method\":");
+        quote(line, request.getMethod());
+        line.append(",\"route\":");
+        quote(line, route(request));
+        line.append(",\"status\":").append(status)
+                .append(",\"latency_us\":").append((System.nanoTime() - start) / 1000)
+                .append(",\"db_us\":").append(dbNanos / 1000)
+                .append(",\"bytes\":").append(bytesOut(response))
+                .append(",\"user_id\":").append(userId);
+        if (rate < 1) {
+            line.append(",\"sample_rate\":").append(rate);
+        }
+        accessLog.info(line.toString());
+    }
+
+    // First matching pattern wins, so specific routes come before catch-alls
+    private double sampleRate(String path) {
+        if (sampleRates.isEmpty()) {
+            return 1;
+        }
+        PathContainer container = PathContainer.parsePath(path);
+        for (SampleRate sampleRate : sampleRates) {
+            if (sampleRate.pattern().matches(container)) {
+                return sampleRate.rate();
+            }
+        }
+        return 1;
+    }
+
+    private static String route(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern != null) {
+            return pattern.toString();
+        }
+        // Requests served by another servlet, e.g. /uploads/*; refused or unmatched ones have no route
+        HttpServletMapping mapping = request.getHttpServletMapping();
+        return mapping != null && mapping.getMappingMatch() == MappingMatch.PATH ? mapping.getPattern() : null;
+    }
+
+    private static Integer currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof AuthenticatedUser user
+                ? user.getId() : null;
+    }
+
+    static long bytesOut(HttpServletResponse response) {
+        ServletResponse unwrapped = response;
+        while (unwrapped instanceof ServletResponseWrapper wrapper) {
+            unwrapped = wrapper.getResponse();
+        }
+        // Tomcat counts what went through its buffer; sendfile bypasses it, but then Content-Length is set
+        if (unwrapped instanceof ResponseFacade tomcat && tomcat.getContentWritten() > 0) {
+            return tomcat.getContentWritten();
+        }
+        String contentLength = response.getHeader(HttpHeaders.CONTENT_LENGTH);
+        return contentLength != null ? Long.parseLong(contentLength) : 0;
+    }
+
+    private static void quote(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        JsonStringEncoder.getInstance().quoteAsString(value, line);
+        line.append('"');
+    }
+}
@@ -0,0 +1,67 @@
+package openclassroom.com.rental.logging;
+
+import org.hibernate.SessionEventListener;
+
+/**
+ * Adds the time Hibernate spends preparing and executing JDBC statements to the request
+ * being logged on the current thread. Registered through hibernate.session.events.auto,
+ * which creates one instance per session.
+ * Statements run through JdbcTemplate, or on another thread, are not counted.
+ */
+public class DbTimeListener implements SessionEventListener {
+    private static final ThreadLocal<long[]> CURRENT = new ThreadLocal<>();
+
+    private long started;
+
+    static void begin() {
+        CURRENT.set(new long[1]);
+    }
+
+    // Nanoseconds spent in the database since begin()
+    static long finish() {
+        long[] elapsed = CURRENT.get();
+        CURRENT.remove();
+        return elapsed == null ? 0 : elapsed[0];
+    }
+
+    private void start() {
+        started = System.nanoTime();
+    }
+
+    private void stop() {
+        long[] elapsed = CURRENT.get();
+        if (elapsed != null) {
+            elapsed[0] += System.nanoTime() - started;
+        }
+    }
+
+    @Override
+    public void jdbcPrepareStatementStart() {
+        start();
+    }
+
+    @Override
+    public void jdbcPrepareStatementEnd() {
+        stop();
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        start();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        stop();
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        start();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        stop();
+    }
+}
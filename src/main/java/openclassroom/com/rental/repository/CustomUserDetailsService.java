@@ -1,28 +1,36 @@
 package openclassroom.com.rental.repository;
 
-import openclassroom.com.rental.entity.User;
+import openclassroom.com.rental.dto.user.UserAccount;
+import openclassroom.com.rental.security.AuthenticatedUser;
+import openclassroom.com.rental.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
     @Autowired
-    private UserRepository userRepository;
+    private UserService userService;
 
     @Override
     public UserDetails loadUserByUsername(String email) throws
             UsernameNotFoundException{
-        User user = userRepository.findByEmail(email).orElseThrow(() -> new UsernameNotFoundException(
+        UserAccount user = userService.findByEmail(email).orElseThrow(() -> new UsernameNotFoundException(
                 "user not found"
         ));
-        return new
-                org.springframework.security.core.userdetails.User(user.getEmail(),
-        user.getPassword(), new ArrayList<>());
+        return AuthenticatedUser.from(user);
+    }
+
+    // Called by the authentication provider after a login whose hash is outdated
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        AuthenticatedUser authenticated = (AuthenticatedUser) user;
+        userService.updatePassword(authenticated.getId(), newPassword);
+        return new AuthenticatedUser(authenticated.getId(), authenticated.getUsername(), newPassword,
+                authenticated.getAuthorities(), authenticated.getTokenVersion());
     }
 
 }
@@ -1,9 +1,86 @@
 package openclassroom.com.rental.repository;
 
+import jakarta.persistence.QueryHint;
+import openclassroom.com.rental.dto.message.MessageDetailResponse;
 import openclassroom.com.rental.entity.Message;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
 @Repository
 public interface MessageRepository extends JpaRepository<Message,Integer> {
+
+    // Rows are pulled from the driver in chunks; on MySQL this needs useCursorFetch=true on the JDBC URL
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            SELECT new openclassroom.com.rental.dto.message.MessageDetailResponse(
+                m.id, m.rental.id, m.user.id, m.message, m.createdAt, m.updatedAt)
+            FROM Message m
+            ORDER BY m.id
+            """)
+    Stream<MessageDetailResponse> streamAll();
+
+    // Both foreign keys checked in one round trip: 1 when the rental and the user exist
+    @Query("SELECT COUNT(r) FROM Rental r, User u WHERE r.id = :rentalId AND u.id = :userId")
+    long countRentalAndUser(@Param("rentalId") Integer rentalId, @Param("userId") Integer userId);
+
+    // Keyset pagination over (createdAt DESC, id DESC) within one conversation,
+    // backed by idx_messages_rental_created_id; deep pages cost the same as the first
+    @Query("""
+            SELECT new openclassroom.com.rental.dto.message.MessageDetailResponse(
+                m.id, m.rental.id, m.user.id, m.message, m.createdAt, m.updatedAt)
+            FROM Message m
+            WHERE m.rental.id = :rentalId
+            ORDER BY m.createdAt DESC, m.id DESC
+            """)
+    List<MessageDetailResponse> findRentalFirstPage(@Param("rentalId") Integer rentalId, Limit limit);
+
+    @Query("""
+            SELECT new openclassroom.com.rental.dto.message.MessageDetailResponse(
+                m.id, m.rental.id, m.user.id, m.message, m.createdAt, m.updatedAt)
+            FROM Message m
+            WHERE m.rental.id = :rentalId
+              AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id))
+            ORDER BY m.createdAt DESC, m.id DESC
+            """)
+    List<MessageDetailResponse> findRentalPageAfter(@Param("rentalId") Integer rentalId,
+                                                    @Param("createdAt") Timestamp createdAt,
+                                                    @Param("id") Integer id,
+                                                    Limit limit);
+
+    // Same over idx_messages_user_created_id
+    @Query("""
+            SELECT new openclassroom.com.rental.dto.message.MessageDetailResponse(
+                m.id, m.rental.id, m.user.id, m.message, m.createdAt, m.updatedAt)
+            FROM Message m
+            WHERE m.user.id = :userId
+            ORDER BY m.createdAt DESC, m.id DESC
+            """)
+    List<MessageDetailResponse> findUserFirstPage(@Param("userId") Integer userId, Limit limit);
+
+    @Query("""
+            SELECT new openclassroom.com.rental.dto.message.MessageDetailResponse(
+                m.id, m.rental.id, m.user.id, m.message, m.createdAt, m.updatedAt)
+            FROM Message m
+            WHERE m.user.id = :userId
+              AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id))
+            ORDER BY m.createdAt DESC, m.id DESC
+            """)
+    List<MessageDetailResponse> findUserPageAfter(@Param("userId") Integer userId,
+                                                  @Param("createdAt") Timestamp createdAt,
+                                                  @Param("id") Integer id,
+                                                  Limit limit);
 }
@@ -1,8 +1,179 @@
 package openclassroom.com.rental.repository;
 
+import jakarta.persistence.QueryHint;
+import openclassroom.com.rental.dto.rental.RentalResponse;
+import openclassroom.com.rental.dto.rental.RentalText;
+import openclassroom.com.rental.dto.rental.RentalsVersion;
 import openclassroom.com.rental.entity.Rental;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 public interface RentalRepository extends JpaRepository<Rental, Integer> {
 
+    // Keyset pagination over (createdAt DESC, id DESC), backed by idx_rentals_created_id.
+    // Projects straight into RentalResponse: r.owner.id reads the owner_id column, no join on users.
+    // Listings serve the thumbnail when one has been generated.
+    @Query("""
+            SELECT new openclassroom.com.rental.dto.rental.RentalResponse(
+                r.id, r.name, r.surface, r.price, COALESCE(r.thumbnailUrl, r.pictureUrl), r.description,
+                r.owner.id, r.createdAt, r.updatedAt)
+            FROM Rental r
+            WHERE (:minPrice IS NULL OR r.price >= :minPrice)
+              AND (:maxPrice IS NULL OR r.price <= :maxPrice)
+              AND (:minSurface IS NULL OR r.surface >= :minSurface)
+              AND (:maxSurface IS NULL OR r.surface <= :maxSurface)
+              AND (:ownerId IS NULL OR r.owner.id = :ownerId)
+            ORDER BY r.createdAt DESC, r.id DESC
+            """)
+    List<RentalResponse> findFirstPage(@Param("minPrice") BigDecimal minPrice,
+                                       @Param("maxPrice") BigDecimal maxPrice,
+                                       @Param("minSurface") BigDecimal minSurface,
+                                       @Param("maxSurface") BigDecimal maxSurface,
+                                       @Param("ownerId") Integer ownerId,
+                                       Limit limit);
+
+    @Query("""
+            SELECT new openclassroom.com.rental.dto.rental.RentalResponse(
+                r.id, r.name, r.surface, r.price, COALESCE(r.thumbnailUrl, r.pictureUrl), r.description,
+                r.owner.id, r.createdAt, r.updatedAt)
+            FROM Rental r
+            WHERE (:minPrice IS NULL OR r.price >= :minPrice)
+              AND (:maxPrice IS NULL OR r.price <= :maxPrice)
+              AND (:minSurface IS NULL OR r.surface >= :minSurface)
+              AND (:maxSurface IS NULL OR r.surface <= :maxSurface)
+              AND (:ownerId IS NULL OR r.owner.id = :ownerId)
+              AND (r.createdAt < :createdAt OR (r.createdAt = :createdAt AND r.id < :id))
+            ORDER BY r.createdAt DESC, r.id DESC
+            """)
+    List<RentalResponse> findPageAfter(@Param("minPrice") BigDecimal minPrice,
+                                       @Param("maxPrice") BigDecimal maxPrice,
+                                       @Param("minSurface") BigDecimal minSurface,
+                                       @Param("maxSurface") BigDecimal maxSurface,
+                                       @Param("ownerId") Integer ownerId,
+                                       @Param("createdAt") Timestamp createdAt,
+                                       @Param("id") Integer id,
+                                       Limit limit);
+
+    // Rows are pulled from the driver in chunks; on MySQL this needs useCursorFetch=true on the JDBC URL
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            SELECT new openclassroom.com.rental.dto.rental.RentalResponse(
+                r.id, r.name, r.surface, r.price, COALESCE(r.thumbnailUrl, r.pictureUrl), r.description,
+                r.owner.id, r.createdAt, r.updatedAt)
+            FROM Rental r
+            ORDER BY r.createdAt DESC, r.id DESC
+            """)
+    Stream<RentalResponse> streamAll();
+
+    @Query("""
+            SELECT new openclassroom.com.rental.dto.rental.RentalResponse(
+                r.id, r.name, r.surface, r.price, r.pictureUrl, r.description, r.owner.id, r.createdAt, r.updatedAt)
+            FROM Rental r
+            WHERE r.id = :id
+            """)
+    Optional<RentalResponse> findResponseById(@Param("id") Integer id);
+
+    // Validator for listing pages, cached by RentalsVersionCache
+    @Query("""
+            SELECT new openclassroom.com.rental.dto.rental.RentalsVersion(
+                COUNT(r), MAX(r.id), COALESCE(SUM(r.revision), 0))
+            FROM Rental r
+            """)
+    RentalsVersion findVersion();
+
+    // Search hits, in no particular order; the caller restores the ranking
+    @Query("""
+            SELECT new openclassroom.com.rental.dto.rental.RentalResponse(
+                r.id, r.name, r.surface, r.price, COALESCE(r.thumbnailUrl, r.pictureUrl), r.description,
+                r.owner.id, r.createdAt, r.updatedAt)
+            FROM Rental r
+            WHERE r.id IN :ids
+            """)
+    List<RentalResponse> findResponsesByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT r.id FROM Rental r WHERE r.id IN :ids")
+    List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT COALESCE(MAX(r.id), 0) FROM Rental r")
+    int findMaxId();
+
+    @Query("""
+            SELECT new openclassroom.com.rental.dto.rental.RentalText(r.id, r.name, r.description)
+            FROM Rental r
+            WHERE r.id > :fromId AND r.id <= :toId
+            """)
+    List<RentalText> findTextInRange(@Param("fromId") int fromId, @Param("toId") int toId);
+
+    @Query("SELECT r.pictureUrl FROM Rental r WHERE r.pictureUrl IS NOT NULL")
+    List<String> findAllPictureUrls();
+
+    @Query("SELECT r.thumbnailUrl FROM Rental r WHERE r.thumbnailUrl IS NOT NULL")
+    List<String> findAllThumbnailUrls();
+
+    // The owner check is part of the WHERE clause: 0 rows means unknown id or not the owner.
+    // updatedAt comes from the application clock, like the one stamped on insert
+    @Modifying
+    @Query("""
+            UPDATE Rental r
+            SET r.name = :name, r.surface = :surface, r.price = :price, r.description = :description,
+                r.updatedAt = :updatedAt, r.revision = COALESCE(r.revision, 0) + 1
+            WHERE r.id = :id AND r.owner.id = :ownerId
+            """)
+    int updateOwned(@Param("id") Integer id,
+                    @Param("ownerId") Integer ownerId,
+                    @Param("name") String name,
+                    @Param("surface") BigDecimal surface,
+                    @Param("price") BigDecimal price,
+                    @Param("description") String description,
+                    @Param("updatedAt") Timestamp updatedAt);
+
+    // Same, also replacing the picture; its renditions are regenerated afterwards
+    @Modifying
+    @Query("""
+            UPDATE Rental r
+            SET r.name = :name, r.surface = :surface, r.price = :price, r.description = :description,
+                r.pictureUrl = :pictureUrl, r.thumbnailUrl = NULL, r.updatedAt = :updatedAt,
+                r.revision = COALESCE(r.revision, 0) + 1
+            WHERE r.id = :id AND r.owner.id = :ownerId
+            """)
+    int updateOwnedWithPicture(@Param("id") Integer id,
+                               @Param("ownerId") Integer ownerId,
+                               @Param("name") String name,
+                               @Param("surface") BigDecimal surface,
+                               @Param("price") BigDecimal price,
+                               @Param("description") String description,
+                               @Param("pictureUrl") String pictureUrl,
+                               @Param("updatedAt") Timestamp updatedAt);
+
+    // Only applies if the picture was not replaced while the variants were being generated.
+    // updatedAt comes from the application clock, like the one stamped on insert
+    @Modifying
+    @Query("""
+            UPDATE Rental r
+            SET r.pictureUrl = :pictureUrl, r.thumbnailUrl = :thumbnailUrl, r.updatedAt = :updatedAt,
+                r.revision = COALESCE(r.revision, 0) + 1
+            WHERE r.id = :id AND r.pictureUrl = :originalUrl
+            """)
+    int updatePictures(@Param("id") Integer id,
+                       @Param("originalUrl") String originalUrl,
+                       @Param("pictureUrl") String pictureUrl,
+                       @Param("thumbnailUrl") String thumbnailUrl,
+                       @Param("updatedAt") Timestamp updatedAt);
 }
@@ -2,11 +2,29 @@ package openclassroom.com.rental.repository;
 
 import openclassroom.com.rental.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Integer> {
     Optional<User> findByEmail(String email);
     Optional<User> findByName(String name);
     Optional<User> findById(Integer id);
+    @Query("SELECT COALESCE(u.tokenVersion, 0) FROM User u WHERE u.id = :id")
+    Optional<Integer> findTokenVersionById(@Param("id") Integer id);
+    // Both columns are unique, so at most two rows, each found through its index
+    @Query("SELECT u.email FROM User u WHERE u.email = :email OR u.name = :name")
+    List<String> findEmailsByEmailOrName(@Param("email") String email, @Param("name") String name);
+    @Query("SELECT u.id FROM User u WHERE u.id IN :ids")
+    List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE User u SET u.password = :password WHERE u.id = :id")
+    int updatePassword(@Param("id") Integer id, @Param("password") String password);
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE User u SET u.tokenVersion = COALESCE(u.tokenVersion, 0) + 1 WHERE u.id = :id")
+    int incrementTokenVersion(@Param("id") Integer id);
 }
@@ -0,0 +1,67 @@
+package openclassroom.com.rental.security;
+
+import openclassroom.com.rental.dto.user.UserAccount;
+import openclassroom.com.rental.entity.User;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Security principal carrying the user id and token version, so it can be
+ * rebuilt from token claims without reading the users table.
+ */
+public class AuthenticatedUser implements UserDetails, CredentialsContainer {
+    private final Integer id;
+    private final String email;
+    private String password;
+    private final Collection<? extends GrantedAuthority> authorities;
+    private final int tokenVersion;
+
+    public AuthenticatedUser(Integer id, String email, String password,
+                             Collection<? extends GrantedAuthority> authorities, int tokenVersion) {
+        this.id = id;
+        this.email = email;
+        this.password = password;
+        this.authorities = authorities;
+        this.tokenVersion = tokenVersion;
+    }
+
+    public static AuthenticatedUser from(User user) {
+        return new AuthenticatedUser(user.getId(), user.getEmail(), user.getPassword(), List.of(), user.getTokenVersion());
+    }
+
+    public static AuthenticatedUser from(UserAccount user) {
+        return new AuthenticatedUser(user.getId(), user.getEmail(), user.getPassword(), List.of(), user.getTokenVersion());
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
+    @Override
+    public String getUsername() {
+        return email;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public void eraseCredentials() {
+        this.password = null;
+    }
+}
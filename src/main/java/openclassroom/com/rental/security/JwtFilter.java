@@ -1,11 +1,14 @@
 package openclassroom.com.rental.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import openclassroom.com.rental.repository.CustomUserDetailsService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -14,6 +17,9 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtFilter extends OncePerRequestFilter {
@@ -22,6 +28,31 @@ public class JwtFilter extends OncePerRequestFilter {
     private CustomUserDetailsService userDetailsService;
     @Autowired
     private JwtService jwtService;
+    @Autowired
+    private TokenVersionRegistry tokenVersionRegistry;
+    // Build the principal from token claims instead of reading the users table
+    @Value("${jwt.stateless:false}")
+    private boolean stateless;
+    private final Map<Outcome, Timer> timers = new EnumMap<>(Outcome.class);
+
+    enum Outcome {
+        AUTHENTICATED, INVALID, REVOKED, ANONYMOUS;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    // Time spent authenticating the bearer token, including the user lookup; failures are the non "authenticated" outcomes
+    @Autowired
+    void bindMetrics(MeterRegistry meterRegistry) {
+        for (Outcome outcome : Outcome.values()) {
+            timers.put(outcome, Timer.builder("jwt.authentication")
+                    .description("Time spent authenticating the bearer token of a request")
+                    .tag("outcome", outcome.tag())
+                    .register(meterRegistry));
+        }
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
@@ -34,6 +65,13 @@ public class JwtFilter extends OncePerRequestFilter {
             return;
         }
 
+        long start = System.nanoTime();
+        Outcome outcome = authenticate(request);
+        timers.get(outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        chain.doFilter(request, response);
+    }
+
+    private Outcome authenticate(HttpServletRequest request) {
         final String authorizationHeader = request.getHeader("Authorization");
         String username = null;
         String jwt = null;
@@ -48,16 +86,33 @@ public class JwtFilter extends OncePerRequestFilter {
             }
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
+        if (jwt == null) {
+            return Outcome.ANONYMOUS;
+        }
+        if (username == null) {
+            return Outcome.INVALID;
+        }
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            UserDetails userDetails = stateless ? jwtService.extractPrincipal(jwt) : null;
+            boolean current = true;
+            if (userDetails instanceof AuthenticatedUser user) {
+                current = tokenVersionRegistry.isCurrent(user.getId(), user.getTokenVersion());
+            } else {
+                userDetails = this.userDetailsService.loadUserByUsername(username);
+            }
 
+            if (!current) {
+                return Outcome.REVOKED;
+            }
             if (jwtService.validateToken(jwt, userDetails)) {
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities());
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authToken);
+            } else {
+                return Outcome.INVALID;
             }
         }
-        chain.doFilter(request, response);
+        return Outcome.AUTHENTICATED;
     }
 }
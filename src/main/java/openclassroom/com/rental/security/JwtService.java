@@ -1,26 +1,63 @@
 package openclassroom.com.rental.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Component
 public class JwtService {
-    @Value("${jwt.secret}")
-    private String SECRET_KEY;
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String TOKEN_VERSION_CLAIM = "ver";
+    private static final String AUTHORITIES_CLAIM = "roles";
 
-    private Key getSigningKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(SECRET_KEY);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private final Key signingKey;
+    private final JwtParser parser;
+    // Verified claims keyed by SHA-256 of the token, evicted when the token expires
+    private final Cache<String, Claims> claimsCache;
+    private final Timer verifyTimer;
+
+    public JwtService(@Value("${jwt.secret}") String secretKey,
+                      @Value("${jwt.claims-cache.max-size:10000}") long claimsCacheSize,
+                      MeterRegistry meterRegistry) {
+        this.signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+        this.claimsCache = Caffeine.newBuilder()
+                .maximumSize(claimsCacheSize)
+                .expireAfter(new ClaimsExpiry())
+                .recordStats()
+                .build();
+        this.verifyTimer = Timer.builder("jwt.verify")
+                .description("Time spent verifying the signature and parsing a JWT")
+                .register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, claimsCache, "jwtClaims");
     }
 
     public String extractUsername(String token) {
@@ -37,11 +74,23 @@ public class JwtService {
     }
 
     private Claims extractAllClaims(String token){
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        String digest = digest(token);
+        Claims claims = claimsCache.getIfPresent(digest);
+        if (claims == null) {
+            // Invalid tokens throw here and are never cached
+            claims = verifyTimer.record(() -> parser.parseClaimsJws(token).getBody());
+            claimsCache.put(digest, claims);
+        }
+        return claims;
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
     }
 
     private Boolean isTokenExpired(String token) {
@@ -49,22 +98,78 @@ public class JwtService {
     }
 
     public String generateToken(UserDetails userDetails) {
-        return createToken(userDetails.getUsername());
+        Map<String, Object> claims = new HashMap<>();
+        if (userDetails instanceof AuthenticatedUser user) {
+            claims.put(USER_ID_CLAIM, user.getId());
+            claims.put(TOKEN_VERSION_CLAIM, user.getTokenVersion());
+        }
+        claims.put(AUTHORITIES_CLAIM, userDetails.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList());
+        return createToken(userDetails.getUsername(), claims);
     }
 
-    private String createToken(String subject) {
+    private String createToken(String subject, Map<String, Object> claims) {
         return Jwts.builder()
+                .setClaims(claims)
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60 * 10)) // 10 hours
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     public Boolean validateToken(String token, UserDetails userDetails) {
         final String username = extractUsername(token);
+        if (userDetails instanceof AuthenticatedUser user
+                && extractClaim(token, JwtService::tokenVersion) != user.getTokenVersion()) {
+            return false;
+        }
         return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
     }
 
-}
+    /**
+     * Rebuilds the principal from the signed claims, or returns null for
+     * tokens issued before the user id was embedded.
+     */
+    public AuthenticatedUser extractPrincipal(String token) {
+        Claims claims = extractAllClaims(token);
+        Integer userId = claims.get(USER_ID_CLAIM, Integer.class);
+        if (userId == null) {
+            return null;
+        }
+        List<?> authorities = claims.get(AUTHORITIES_CLAIM, List.class);
+        List<GrantedAuthority> grantedAuthorities = authorities == null ? List.of() : authorities.stream()
+                .map(authority -> (GrantedAuthority) new SimpleGrantedAuthority(authority.toString()))
+                .toList();
+        return new AuthenticatedUser(userId, claims.getSubject(), null, grantedAuthorities, tokenVersion(claims));
+    }
+
+    private static int tokenVersion(Claims claims) {
+        Integer version = claims.get(TOKEN_VERSION_CLAIM, Integer.class);
+        return version == null ? 0 : version;
+    }
+
+    private static class ClaimsExpiry implements Expiry<String, Claims> {
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            Date expiration = claims.getExpiration();
+            if (expiration == null) {
+                return 0;
+            }
+            long remainingMillis = expiration.getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, claims, currentTime);
+        }
 
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package openclassroom.com.rental.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control, ahead of authentication and any database work.
+ * Each client gets a token bucket per route budget: the user named by a valid bearer token,
+ * otherwise the client address (always the address on the login and register endpoints).
+ * Over budget requests get 429; when rate-limit.max-concurrent requests are already
+ * in progress, further ones get 503. Both carry Retry-After.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+    private static final String REJECTED_METRIC = "http.server.requests.rejected";
+
+    private final JwtService jwtService;
+    private final boolean enabled;
+    private final List<Budget> budgets;
+    private final Semaphore inFlight;
+    private final Cache<BucketKey, TokenBucket> buckets;
+    private final Counter rateLimited;
+    private final Counter shed;
+
+    // A route pattern and its allowance, e.g. "/api/auth/**=20/1m": bursts of 20, refilled at 20 per minute
+    private record Budget(PathPattern pattern, int capacity, long periodNanos) {
+    }
+
+    private record BucketKey(Budget budget, String client) {
+    }
+
+    public RateLimitFilter(
+            JwtService jwtService,
+            @Value("${rate-limit.enabled:true}") boolean enabled,
+            @Value("${rate-limit.budgets:/api/auth/**=20/1m,/api/messages/batch=5/1s,/**=50/1s}") String[] budgets,
+            @Value("${rate-limit.max-concurrent:200}") int maxConcurrent,
+            @Value("${rate-limit.max-clients:100000}") long maxClients,
+            MeterRegistry meterRegistry) {
+        this.jwtService = jwtService;
+        this.enabled = enabled;
+        this.budgets = parse(budgets);
+        this.inFlight = new Semaphore(maxConcurrent);
+        // An idle client's bucket is full again after one period; dropping it then loses nothing
+        Duration longestPeriod = this.budgets.stream()
+                .map(budget -> Duration.ofNanos(budget.periodNanos()))
+                .max(Duration::compareTo)
+                .orElse(Duration.ofMinutes(1));
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(longestPeriod)
+                .build();
+        this.rateLimited = Counter.builder(REJECTED_METRIC).tag("reason", "rate-limit")
+                .description("Requests refused before reaching a controller").register(meterRegistry);
+        this.shed = Counter.builder(REJECTED_METRIC).tag("reason", "overload")
+                .description("Requests refused before reaching a controller").register(meterRegistry);
+    }
+
+    private static List<Budget> parse(String[] budgets) {
+        List<Budget> parsed = new ArrayList<>(budgets.length);
+        for (String budget : budgets) {
+            String[] patternAndRate = budget.trim().split("=", 2);
+            String[] rate = patternAndRate.length == 2 ? patternAndRate[1].split("/", 2) : new String[0];
+            if (rate.length != 2) {
+                throw new IllegalArgumentException("Invalid rate-limit budget '" + budget + "', expected pattern=permits/period");
+            }
+            parsed.add(new Budget(PathPatternParser.defaultInstance.parse(patternAndRate[0].trim()),
+                    Integer.parseInt(rate[0].trim()), DurationStyle.detectAndParse(rate[1].trim()).toNanos()));
+        }
+        return parsed;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || "OPTIONS".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI();
+        Budget budget = budgetFor(path);
+        if (budget != null) {
+            long now = System.nanoTime();
+            TokenBucket bucket = buckets.get(new BucketKey(budget, client(request, path)),
+                    key -> new TokenBucket(key.budget().capacity(), key.budget().periodNanos(), now));
+            long wait = bucket.tryAcquire(now);
+            if (wait > 0) {
+                rateLimited.increment();
+                reject(response, HttpStatus.TOO_MANY_REQUESTS, wait, "Too many requests");
+                return;
+            }
+        }
+        if (!inFlight.tryAcquire()) {
+            shed.increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1), "Server is busy");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    // First matching budget wins, so specific routes come before catch-alls
+    private Budget budgetFor(String path) {
+        PathContainer container = PathContainer.parsePath(path);
+        for (Budget budget : budgets) {
+            if (budget.pattern().matches(container)) {
+                return budget;
+            }
+        }
+        return null;
+    }
+
+    private String client(HttpServletRequest request, String path) {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.startsWith("Bearer ") && !path.startsWith("/api/auth/")) {
+            try {
+                // Verified claims are cached, so this is a hash and a lookup for known tokens
+                return "user:" + jwtService.extractUsername(authorization.substring(7));
+            } catch (RuntimeException ex) {
+                // Invalid tokens count against the address, so rotating them doesn't help
+            }
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long waitNanos, String message)
+            throws IOException {
+        long seconds = Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write("{\"error\": \"" + message + "\"}");
+    }
+}
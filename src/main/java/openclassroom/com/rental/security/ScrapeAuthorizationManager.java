@@ -0,0 +1,51 @@
+package openclassroom.com.rental.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.function.Supplier;
+
+/**
+ * Admits the Prometheus scrape when it carries metrics.scrape.username and metrics.scrape.password
+ * as HTTP basic credentials (basic_auth in the scrape config). Users' tokens are not accepted,
+ * and nothing is while no password is set.
+ */
+@Component
+public class ScrapeAuthorizationManager implements AuthorizationManager<RequestAuthorizationContext> {
+
+    private final byte[] expected;
+
+    public ScrapeAuthorizationManager(@Value("${metrics.scrape.username:prometheus}") String username,
+                                      @Value("${metrics.scrape.password:}") String password) {
+        this.expected = password.isEmpty() ? null : ("Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8)))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public AuthorizationResult authorize(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        return decide(context);
+    }
+
+    // Still abstract in AuthorizationManager; Spring Security only calls authorize
+    @Override
+    @Deprecated
+    public AuthorizationDecision check(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        return decide(context);
+    }
+
+    private AuthorizationDecision decide(RequestAuthorizationContext context) {
+        String header = context.getRequest().getHeader(HttpHeaders.AUTHORIZATION);
+        return new AuthorizationDecision(expected != null && header != null
+                && MessageDigest.isEqual(expected, header.getBytes(StandardCharsets.UTF_8)));
+    }
+}
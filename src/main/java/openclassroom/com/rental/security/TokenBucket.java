@@ -0,0 +1,41 @@
+package openclassroom.com.rental.security;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, kept as the time at which it would be full again
+ * (the generic cell rate algorithm). Taking a token is one read and one CAS.
+ */
+public final class TokenBucket {
+    private final long refillNanos;
+    private final long burstNanos;
+    // Time at which every token taken so far will have been refilled
+    private final AtomicLong fullAt;
+
+    /**
+     * A bucket of {@code capacity} tokens, refilled at {@code capacity} tokens per {@code periodNanos}.
+     */
+    public TokenBucket(int capacity, long periodNanos, long now) {
+        this.refillNanos = Math.max(1, periodNanos / capacity);
+        this.burstNanos = refillNanos * capacity;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes a token if one is available.
+     * @return 0 on success, otherwise the nanoseconds until a token will be available
+     */
+    public long tryAcquire(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + refillNanos;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
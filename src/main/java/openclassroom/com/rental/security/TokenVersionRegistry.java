@@ -0,0 +1,56 @@
+package openclassroom.com.rental.security;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import openclassroom.com.rental.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Token version of each user, read from users.token_version and kept for
+ * jwt.stateless.version-ttl, so stateless authentication can reject old tokens
+ * without a query per request. The table is shared by every instance: a revocation
+ * or deletion made elsewhere is seen once the entry expires, one made here at once.
+ * Deleted users, unknown ids and failed lookups are rejected.
+ */
+@Component
+public class TokenVersionRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(TokenVersionRegistry.class);
+    // No token carries this version, so every token of a deleted user is rejected
+    private static final int DELETED = Integer.MAX_VALUE;
+
+    private final LoadingCache<Integer, Integer> versions;
+
+    public TokenVersionRegistry(UserRepository userRepository,
+                                @Value("${jwt.stateless.version-ttl:5s}") Duration versionTtl,
+                                @Value("${jwt.stateless.max-users:100000}") long maxUsers) {
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(versionTtl)
+                .build(userId -> userRepository.findTokenVersionById(userId).orElse(DELETED));
+    }
+
+    public boolean isCurrent(Integer userId, int tokenVersion) {
+        if (userId == null) {
+            return false;
+        }
+        try {
+            return tokenVersion >= versions.get(userId);
+        } catch (RuntimeException ex) {
+            logger.warn("Could not read the token version of user {}, rejecting the token", userId, ex);
+            return false;
+        }
+    }
+
+    public void update(Integer userId, int tokenVersion) {
+        versions.asMap().merge(userId, tokenVersion, Math::max);
+    }
+
+    public void delete(Integer userId) {
+        versions.put(userId, DELETED);
+    }
+}
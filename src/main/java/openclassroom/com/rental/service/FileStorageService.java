@@ -1,5 +1,8 @@
 package openclassroom.com.rental.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -7,43 +10,67 @@ import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.UUID;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Content-addressed upload store: files are named after the SHA-256 of their bytes,
+ * so uploading the same picture twice keeps a single copy on disk.
+ */
 @Service
 public class FileStorageService {
     @Value("${file.upload-dir}")
     private String uploadDir;
 
+    private final Counter bytesDeduplicated;
+    private final Counter bytesWritten;
+    private final Timer stored;
+    private final Timer failed;
+    // Timestamp refreshes share the read lock; the garbage collector takes the write lock for each
+    // deletion, so a file it has just found old cannot be reused and then deleted
+    private final ReadWriteLock storeLock = new ReentrantReadWriteLock();
+
+    public FileStorageService(MeterRegistry meterRegistry) {
+        this.bytesDeduplicated = Counter.builder("uploads.dedup.bytes.saved")
+                .description("Bytes not written because an identical file was already stored")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.bytesWritten = Counter.builder("uploads.bytes.written")
+                .description("Bytes of new content added to the upload directory")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.stored = storeTimer(meterRegistry, "success");
+        this.failed = storeTimer(meterRegistry, "failure");
+    }
+
+    private static Timer storeTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("uploads.store")
+                .description("Time spent hashing and writing an uploaded file")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
     public String storeFile(MultipartFile file) {
         try {
-            // Create upload directory if it doesn't exist
-            Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-            }
-
-            // Generate unique filename
             String originalFilename = file.getOriginalFilename();
             String fileExtension = "";
             if (originalFilename != null && originalFilename.contains(".")) {
-                fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
+                fileExtension = originalFilename.substring(originalFilename.lastIndexOf(".")).toLowerCase();
             }
-            String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
 
-            // Save file
-            Path targetLocation = uploadPath.resolve(uniqueFilename);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-
-            // Return the URL that can be used to access the file
-            return ServletUriComponentsBuilder.fromCurrentContextPath()
-                    .path("/uploads/")
-                    .path(uniqueFilename)
-                    .toUriString();
+            try (InputStream in = file.getInputStream()) {
+                return toUrl(store(in, fileExtension));
+            }
 
         } catch (IOException ex) {
             throw new RuntimeException("Could not store file. Please try again!", ex);
@@ -51,50 +78,108 @@ public class FileStorageService {
     }
 
     /**
-     * Download image from URL and store it locally
-     * @param imageUrl The URL of the image to download
-     * @return The local accessible URL
+     * Streams the content to a temporary file while hashing it, then moves it to its
+     * content address. Returns the stored file name.
      */
-    public String storeFileFromUrl(String imageUrl) {
+    String store(InputStream content, String fileExtension) throws IOException {
+        Timer.Sample sample = Timer.start();
+        Timer outcome = failed;
+        MessageDigest digest = sha256();
         try {
-            // Create upload directory if it doesn't exist
-            Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
+            Path temp = createTempFile();
+            try {
+                long size;
+                try (InputStream in = new DigestInputStream(content, digest)) {
+                    size = Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                String filename = commit(temp, digest, size, fileExtension);
+                outcome = stored;
+                return filename;
+            } finally {
+                Files.deleteIfExists(temp);
             }
+        } finally {
+            sample.stop(outcome);
+        }
+    }
 
-            // Extract file extension from URL
-            String fileExtension = ".jpg"; // default
-            String urlPath = imageUrl.toLowerCase();
-            if (urlPath.contains(".png")) {
-                fileExtension = ".png";
-            } else if (urlPath.contains(".jpeg") || urlPath.contains(".jpg")) {
-                fileExtension = ".jpg";
-            } else if (urlPath.contains(".gif")) {
-                fileExtension = ".gif";
-            } else if (urlPath.contains(".webp")) {
-                fileExtension = ".webp";
-            }
+    /**
+     * Creates an empty temporary file in the upload directory, so the final move stays on one file system.
+     */
+    Path createTempFile() throws IOException {
+        Path uploadPath = Paths.get(uploadDir);
+        if (!Files.exists(uploadPath)) {
+            Files.createDirectories(uploadPath);
+        }
+        return Files.createTempFile(uploadPath, "upload-", ".tmp");
+    }
 
-            // Generate unique filename
-            String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
+    /**
+     * Moves a fully written temporary file to the address given by its digest, or drops it
+     * if that content is already stored. Returns the stored file name.
+     */
+    String commit(Path temp, MessageDigest digest, long size, String fileExtension) throws IOException {
+        String filename = HexFormat.of().formatHex(digest.digest()) + fileExtension;
+        Path target = Paths.get(uploadDir).resolve(filename);
+        if (touch(target)) {
+            bytesDeduplicated.increment(size);
+            Files.deleteIfExists(temp);
+        } else {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            bytesWritten.increment(size);
+        }
+        return filename;
+    }
 
-            // Download file from URL
-            URL url = new URL(imageUrl);
-            Path targetLocation = uploadPath.resolve(uniqueFilename);
+    /**
+     * Refreshes the timestamp of a stored file so the garbage collector's grace period covers
+     * a new reference to it. Returns false if the file does not exist (anymore).
+     */
+    boolean touch(Path file) throws IOException {
+        storeLock.readLock().lock();
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException ex) {
+            return false;
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
 
-            try (InputStream in = url.openStream()) {
-                Files.copy(in, targetLocation, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Deletes a stored file unless it was written or reused after the cutoff, checked while
+     * no commit is in progress. Returns the number of bytes freed, or -1 if the file was kept.
+     */
+    long deleteIfUnusedSince(Path file, long cutoffMillis) throws IOException {
+        storeLock.writeLock().lock();
+        try {
+            if (Files.getLastModifiedTime(file).toMillis() > cutoffMillis) {
+                return -1;
             }
+            long size = Files.size(file);
+            Files.delete(file);
+            return size;
+        } catch (NoSuchFileException ex) {
+            return -1;
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
 
-            // Return the URL that can be used to access the file
-            return ServletUriComponentsBuilder.fromCurrentContextPath()
-                    .path("/uploads/")
-                    .path(uniqueFilename)
-                    .toUriString();
+    static String toUrl(String filename) {
+        // Return the URL that can be used to access the file
+        return ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/uploads/")
+                .path(filename)
+                .toUriString();
+    }
 
-        } catch (IOException ex) {
-            throw new RuntimeException("Could not download and store file from URL: " + imageUrl + ". Error: " + ex.getMessage(), ex);
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
         }
     }
 }
@@ -0,0 +1,141 @@
+package openclassroom.com.rental.service;
+
+import openclassroom.com.rental.config.AsyncConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Produces resized renditions of uploaded rental pictures off the request thread.
+ */
+@Service
+public class ImageVariantService {
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariantService.class);
+
+    enum Variant {
+        THUMBNAIL("thumb", 320),
+        FULL("full", 1600);
+
+        private final String suffix;
+        private final int maxWidth;
+
+        Variant(String suffix, int maxWidth) {
+            this.suffix = suffix;
+            this.maxWidth = maxWidth;
+        }
+    }
+
+    private final RentalService rentalService;
+    private final RentalsVersionCache rentalsVersionCache;
+    private final FileStorageService fileStorageService;
+
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+
+    @Value("${image.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    public ImageVariantService(RentalService rentalService, RentalsVersionCache rentalsVersionCache,
+                               FileStorageService fileStorageService) {
+        this.rentalService = rentalService;
+        this.rentalsVersionCache = rentalsVersionCache;
+        this.fileStorageService = fileStorageService;
+    }
+
+    /**
+     * Writes the thumbnail and full renditions next to the original, then points the rental at them.
+     * The rental is left untouched if its picture changed in the meantime or the image can't be decoded.
+     */
+    @Async(AsyncConfig.IMAGE_EXECUTOR)
+    public void processRentalPicture(Integer rentalId, String originalUrl) {
+        String filename = originalUrl.substring(originalUrl.lastIndexOf('/') + 1);
+        Path source = Paths.get(uploadDir).resolve(filename);
+        try {
+            BufferedImage image = ImageIO.read(source.toFile());
+            if (image == null) {
+                logger.warn("No image reader for {}, keeping the original", filename);
+                return;
+            }
+            String baseUrl = originalUrl.substring(0, originalUrl.lastIndexOf('/') + 1);
+            String thumbnailName = writeVariant(image, source, Variant.THUMBNAIL);
+            String fullName = writeVariant(image, source, Variant.FULL);
+            if (rentalService.applyPictureVariants(rentalId, originalUrl, baseUrl + fullName, baseUrl + thumbnailName)) {
+                // Listing pages show the thumbnail; the update is committed by now
+                rentalsVersionCache.invalidate();
+            }
+        } catch (IOException ex) {
+            logger.error("Could not process picture {} of rental {}", filename, rentalId, ex);
+        }
+    }
+
+    private String writeVariant(BufferedImage image, Path source, Variant variant) throws IOException {
+        String filename = source.getFileName().toString();
+        int dot = filename.lastIndexOf('.');
+        String baseName = dot > 0 ? filename.substring(0, dot) : filename;
+        String variantName = baseName + "-" + variant.suffix + ".jpg";
+        Path target = source.resolveSibling(variantName);
+        // Same picture uploaded again: reuse the renditions, keeping them inside the GC grace period
+        if (fileStorageService.touch(target)) {
+            return variantName;
+        }
+
+        BufferedImage resized = resize(image, variant.maxWidth);
+        // Write to a temporary name first so a half-written file is never served
+        Path temp = Files.createTempFile(source.getParent(), baseName, ".tmp");
+        try {
+            writeJpeg(resized, temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return variantName;
+    }
+
+    private static BufferedImage resize(BufferedImage image, int maxWidth) {
+        int width = Math.min(image.getWidth(), maxWidth);
+        int height = Math.max(1, (int) Math.round(image.getHeight() * (width / (double) image.getWidth())));
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // JPEG has no alpha channel: flatten transparent PNG/GIF pixels onto white
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package openclassroom.com.rental.service;
+import io.micrometer.core.annotation.Timed;
+import openclassroom.com.rental.dto.KeysetCursor;
 import openclassroom.com.rental.dto.MessageRequest;
+import openclassroom.com.rental.dto.message.MessageDetailResponse;
 import openclassroom.com.rental.entity.Message;
 import openclassroom.com.rental.entity.Rental;
 import openclassroom.com.rental.entity.User;
@@ -7,27 +10,41 @@ import openclassroom.com.rental.exception.ResourceNotFoundException;
 import openclassroom.com.rental.repository.MessageRepository;
 import openclassroom.com.rental.repository.RentalRepository;
 import openclassroom.com.rental.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Timestamp;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
+@Timed(value = "service.method", description = "Time spent in a service method")
 public class MessageService {
 
     private final MessageRepository messageRepository;
     private final RentalRepository rentalRepository;
     private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${messages.batch-size:500}")
+    private int batchSize;
 
     public MessageService(
             MessageRepository messageRepository,
             RentalRepository rentalRepository,
-            UserRepository userRepository) {
+            UserRepository userRepository,
+            JdbcTemplate jdbcTemplate) {
         this.messageRepository = messageRepository;
         this.rentalRepository = rentalRepository;
         this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     @Transactional(readOnly = true)
@@ -35,6 +52,39 @@ public class MessageService {
         return messageRepository.findAll();
     }
 
+    /**
+     * Hands every message to the consumer one row at a time, without materialising the list.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllMessages(Consumer<MessageDetailResponse> consumer) {
+        try (Stream<MessageDetailResponse> messages = messageRepository.streamAll()) {
+            messages.forEach(consumer);
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} messages of the rental's conversation following the cursor (newest first).
+     * Callers ask for one extra row to know whether another page exists.
+     */
+    @Transactional(readOnly = true)
+    public List<MessageDetailResponse> findRentalMessagesPage(Integer rentalId, KeysetCursor cursor, int limit) {
+        if (cursor == null) {
+            return messageRepository.findRentalFirstPage(rentalId, Limit.of(limit));
+        }
+        return messageRepository.findRentalPageAfter(rentalId, cursor.getCreatedAt(), cursor.getId(), Limit.of(limit));
+    }
+
+    /**
+     * Same as {@link #findRentalMessagesPage} over the messages a user sent.
+     */
+    @Transactional(readOnly = true)
+    public List<MessageDetailResponse> findUserMessagesPage(Integer userId, KeysetCursor cursor, int limit) {
+        if (cursor == null) {
+            return messageRepository.findUserFirstPage(userId, Limit.of(limit));
+        }
+        return messageRepository.findUserPageAfter(userId, cursor.getCreatedAt(), cursor.getId(), Limit.of(limit));
+    }
+
     @Transactional(readOnly = true)
     public Optional<Message> findMessageById(Integer id) {
         return messageRepository.findById(id);
@@ -42,12 +92,15 @@ public class MessageService {
 
     @Transactional
     public Message saveMessage(MessageRequest request) {
-        // Fetch the rental and user entities
-        Rental rental = rentalRepository.findById(request.getRental_id())
-                .orElseThrow(() -> new ResourceNotFoundException("Rental not found with id: " + request.getRental_id()));
-
-        User user = userRepository.findById(request.getUser_id())
-                .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + request.getUser_id()));
+        // One existence check, then references: the insert only needs the foreign keys
+        if (messageRepository.countRentalAndUser(request.getRental_id(), request.getUser_id()) == 0) {
+            if (!rentalRepository.existsById(request.getRental_id())) {
+                throw new ResourceNotFoundException("Rental not found with id: " + request.getRental_id());
+            }
+            throw new ResourceNotFoundException("User not found with id: " + request.getUser_id());
+        }
+        Rental rental = rentalRepository.getReferenceById(request.getRental_id());
+        User user = userRepository.getReferenceById(request.getUser_id());
 
         // Create the message entity
         Message message = new Message();
@@ -63,6 +116,44 @@ public class MessageService {
         return messageRepository.save(message);
     }
 
+    /**
+     * Checks every referenced rental and user with one IN query each, then inserts all messages
+     * as JDBC batches. IDENTITY ids keep Hibernate from batching, so this bypasses the entity.
+     * On MySQL, rewriteBatchedStatements=true turns each batch into one multi-row INSERT.
+     * Nothing is inserted if any id is unknown.
+     */
+    @Transactional
+    public int saveMessages(List<MessageRequest> requests) {
+        Set<Integer> rentalIds = new HashSet<>();
+        Set<Integer> userIds = new HashSet<>();
+        for (MessageRequest request : requests) {
+            rentalIds.add(request.getRental_id());
+            userIds.add(request.getUser_id());
+        }
+        Set<Integer> missingRentals = new HashSet<>(rentalIds);
+        rentalRepository.findExistingIds(rentalIds).forEach(missingRentals::remove);
+        if (!missingRentals.isEmpty()) {
+            throw new ResourceNotFoundException("Rental not found with id: " + missingRentals.iterator().next());
+        }
+        Set<Integer> missingUsers = new HashSet<>(userIds);
+        userRepository.findExistingIds(userIds).forEach(missingUsers::remove);
+        if (!missingUsers.isEmpty()) {
+            throw new ResourceNotFoundException("User not found with id: " + missingUsers.iterator().next());
+        }
+
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO messages (rental_id, user_id, message, created_at, updated_at) VALUES (?, ?, ?, ?, ?)",
+                requests, batchSize, (statement, request) -> {
+                    statement.setInt(1, request.getRental_id());
+                    statement.setInt(2, request.getUser_id());
+                    statement.setString(3, request.getMessage());
+                    statement.setTimestamp(4, now);
+                    statement.setTimestamp(5, now);
+                });
+        return requests.size();
+    }
+
     @Transactional
     public void deleteMessage(Integer id) {
         messageRepository.deleteById(id);
@@ -0,0 +1,363 @@
+package openclassroom.com.rental.service;
+
+import openclassroom.com.rental.exception.BadRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Downloads pictures from remote URLs into the upload store.
+ * Bodies are streamed to disk and hashed as they arrive. Every download is bounded in
+ * time and size. At most image.import.max-concurrent downloads run at once; further
+ * ones wait in a bounded queue without holding a thread.
+ */
+@Service
+public class RemoteImageImporter {
+    private static final Logger logger = LoggerFactory.getLogger(RemoteImageImporter.class);
+    private static final Map<String, String> EXTENSIONS = Map.of(
+            "image/jpeg", ".jpg",
+            "image/jpg", ".jpg",
+            "image/png", ".png",
+            "image/gif", ".gif",
+            "image/webp", ".webp");
+
+    public record Result(String url, String pictureUrl, String error) {
+    }
+
+    private final FileStorageService fileStorageService;
+    private final HttpClient httpClient;
+    private final Duration responseTimeout;
+    private final Duration timeout;
+    private final long maxBytes;
+    private final int queueCapacity;
+
+    private final Semaphore permits;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+
+    public RemoteImageImporter(
+            FileStorageService fileStorageService,
+            @Value("${image.import.connect-timeout:5s}") Duration connectTimeout,
+            @Value("${image.import.response-timeout:10s}") Duration responseTimeout,
+            @Value("${image.import.timeout:30s}") Duration timeout,
+            @Value("${image.import.max-size:10MB}") DataSize maxSize,
+            @Value("${image.import.max-concurrent:8}") int maxConcurrent,
+            @Value("${image.import.queue-capacity:100}") int queueCapacity) {
+        this.fileStorageService = fileStorageService;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.responseTimeout = responseTimeout;
+        this.timeout = timeout;
+        this.maxBytes = maxSize.toBytes();
+        this.queueCapacity = queueCapacity;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Imports one picture and returns its local URL.
+     * @throws BadRequestException if the URL can't be fetched, isn't an image, is too large or too slow
+     * @throws TaskRejectedException if too many imports are already waiting
+     */
+    public String importImage(String imageUrl) {
+        try {
+            return FileStorageService.toUrl(importAsync(imageUrl).join());
+        } catch (CompletionException ex) {
+            throw translate(imageUrl, ex.getCause());
+        }
+    }
+
+    /**
+     * Imports all pictures in parallel, within the concurrency limit, and reports each outcome
+     * in the order of the given URLs.
+     */
+    public List<Result> importAll(List<String> imageUrls) {
+        List<CompletableFuture<String>> downloads = new ArrayList<>(imageUrls.size());
+        for (String imageUrl : imageUrls) {
+            downloads.add(importAsync(imageUrl));
+        }
+        List<Result> results = new ArrayList<>(imageUrls.size());
+        for (int i = 0; i < imageUrls.size(); i++) {
+            String imageUrl = imageUrls.get(i);
+            try {
+                results.add(new Result(imageUrl, FileStorageService.toUrl(downloads.get(i).join()), null));
+            } catch (CompletionException ex) {
+                results.add(new Result(imageUrl, null, translate(imageUrl, ex.getCause()).getMessage()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Starts the import and completes with the stored file name. Runs on the HTTP client's
+     * threads, so it can't build request-relative URLs itself.
+     */
+    CompletableFuture<String> importAsync(String imageUrl) {
+        URI uri;
+        try {
+            uri = URI.create(imageUrl);
+        } catch (IllegalArgumentException ex) {
+            return CompletableFuture.failedFuture(new BadRequestException("Invalid picture URL: " + imageUrl));
+        }
+        if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+            return CompletableFuture.failedFuture(new BadRequestException("Invalid picture URL: " + imageUrl));
+        }
+        return limited(() -> download(uri));
+    }
+
+    private CompletableFuture<String> download(URI uri) {
+        Path temp;
+        try {
+            temp = fileStorageService.createTempFile();
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(ex));
+        }
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(responseTimeout)
+                .header("Accept", "image/*")
+                .GET()
+                .build();
+        CompletableFuture<HttpResponse<Download>> exchange =
+                httpClient.sendAsync(request, info -> subscriber(info, uri, temp));
+        CompletableFuture<String> stored = exchange.copy()
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(response -> {
+                    Download download = response.body();
+                    try {
+                        return fileStorageService.commit(temp, download.digest(), download.size(), download.extension());
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+        // Callers see the outcome only once the temporary file is gone
+        return stored.whenComplete((name, ex) -> {
+            if (ex != null) {
+                // Aborts the exchange, including a body that is still trickling in
+                exchange.cancel(true);
+            }
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException cleanup) {
+                logger.warn("Could not delete temporary file {}", temp, cleanup);
+            }
+        });
+    }
+
+    private HttpResponse.BodySubscriber<Download> subscriber(HttpResponse.ResponseInfo info, URI uri, Path temp) {
+        if (info.statusCode() != 200) {
+            throw new BadRequestException("Picture URL answered HTTP " + info.statusCode());
+        }
+        long length = info.headers().firstValueAsLong("Content-Length").orElse(-1);
+        if (length > maxBytes) {
+            throw new BadRequestException("Picture exceeds " + maxBytes + " bytes");
+        }
+        String contentType = info.headers().firstValue("Content-Type").orElse("");
+        String extension = extension(contentType, uri.getPath());
+        if (extension == null) {
+            throw new BadRequestException("Picture URL did not return an image");
+        }
+        return new DownloadSubscriber(temp, extension, maxBytes);
+    }
+
+    private static String extension(String contentType, String path) {
+        String mediaType = contentType.split(";")[0].trim().toLowerCase(Locale.ROOT);
+        String extension = EXTENSIONS.get(mediaType);
+        if (extension != null || mediaType.startsWith("image/")) {
+            return extension != null ? extension : ".img";
+        }
+        // Some servers send application/octet-stream; trust a known extension in the path instead
+        String lowerPath = path == null ? "" : path.toLowerCase(Locale.ROOT);
+        for (String known : EXTENSIONS.values()) {
+            if (lowerPath.endsWith(known)) {
+                return known;
+            }
+        }
+        return lowerPath.endsWith(".jpeg") ? ".jpg" : null;
+    }
+
+    private RuntimeException translate(String imageUrl, Throwable cause) {
+        if (cause instanceof BadRequestException || cause instanceof TaskRejectedException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof TimeoutException || cause instanceof HttpTimeoutException) {
+            return new BadRequestException("Timed out downloading picture from " + imageUrl);
+        }
+        logger.warn("Could not import picture from {}", imageUrl, cause);
+        return new BadRequestException("Could not download picture from " + imageUrl);
+    }
+
+    // --- Concurrency limit -----------------------------------------------------------------
+
+    private CompletableFuture<String> limited(Supplier<CompletableFuture<String>> task) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<String> running;
+            try {
+                running = task.get();
+            } catch (RuntimeException ex) {
+                running = CompletableFuture.failedFuture(ex);
+            }
+            running.whenComplete((name, ex) -> {
+                release();
+                if (ex != null) {
+                    result.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+                } else {
+                    result.complete(name);
+                }
+            });
+        };
+        if (permits.tryAcquire()) {
+            start.run();
+        } else if (waitingCount.incrementAndGet() > queueCapacity) {
+            waitingCount.decrementAndGet();
+            result.completeExceptionally(new TaskRejectedException("Too many picture imports in progress"));
+        } else {
+            waiting.add(start);
+            // A permit may have been released between the failed tryAcquire and the add
+            drain();
+        }
+        return result;
+    }
+
+    private void release() {
+        permits.release();
+        drain();
+    }
+
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                permits.release();
+                return;
+            }
+            waitingCount.decrementAndGet();
+            next.run();
+        }
+    }
+
+    // --- Streaming body ----------------------------------------------------------------------
+
+    private record Download(MessageDigest digest, long size, String extension) {
+    }
+
+    /**
+     * Writes the body to the temporary file while hashing it, and cancels the
+     * exchange as soon as it grows past the size limit.
+     */
+    private static final class DownloadSubscriber implements HttpResponse.BodySubscriber<Download> {
+        private final Path temp;
+        private final String extension;
+        private final long maxBytes;
+        private final MessageDigest digest = FileStorageService.sha256();
+        private final CompletableFuture<Download> body = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+        private FileChannel channel;
+        private long size;
+
+        DownloadSubscriber(Path temp, String extension, long maxBytes) {
+            this.temp = temp;
+            this.extension = extension;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public CompletionStage<Download> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            try {
+                channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException ex) {
+                subscription.cancel();
+                body.completeExceptionally(ex);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            try {
+                for (ByteBuffer buffer : buffers) {
+                    size += buffer.remaining();
+                    if (size > maxBytes) {
+                        subscription.cancel();
+                        close();
+                        body.completeExceptionally(new BadRequestException("Picture exceeds " + maxBytes + " bytes"));
+                        return;
+                    }
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            } catch (IOException ex) {
+                subscription.cancel();
+                close();
+                body.completeExceptionally(ex);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            close();
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            close();
+            body.complete(new Download(digest, size, extension));
+        }
+
+        private void close() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException ex) {
+                body.completeExceptionally(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package openclassroom.com.rental.service;
+
+import openclassroom.com.rental.dto.rental.RentalText;
+
+/**
+ * Published when a rental is saved or deleted. {@code text} is null for deletions.
+ */
+public record RentalChangedEvent(Integer id, RentalText text) {
+
+    static RentalChangedEvent deleted(Integer id) {
+        return new RentalChangedEvent(id, null);
+    }
+}
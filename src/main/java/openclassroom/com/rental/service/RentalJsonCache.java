@@ -0,0 +1,91 @@
+package openclassroom.com.rental.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import openclassroom.com.rental.dto.rental.ListRentalResponse;
+import openclassroom.com.rental.dto.rental.RentalResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Listing entries already serialized to JSON, keyed by rental id.
+ * An entry is only reused while the row's updated_at matches, so changes made by
+ * bulk updates or by another instance are picked up too; saves and deletes also evict it.
+ */
+@Component
+public class RentalJsonCache {
+    private static final byte[] PAGE_START = "{\"rentals\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PAGE_NEXT = "],\"next\":".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectWriter rentalWriter;
+    private final ObjectWriter nextWriter;
+    private final Cache<Integer, Entry> cache;
+
+    private record Entry(Timestamp updatedAt, byte[] json) {
+    }
+
+    public RentalJsonCache(ObjectMapper objectMapper,
+                           @Value("${rentals.json-cache.max-size:16MB}") DataSize maxSize,
+                           MeterRegistry meterRegistry) {
+        this.rentalWriter = objectMapper.writerFor(RentalResponse.class);
+        this.nextWriter = objectMapper.writerFor(String.class);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Integer id, Entry entry) -> entry.json().length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "rentalJson");
+    }
+
+    /**
+     * Writes the page exactly as Jackson would write the equivalent {@link ListRentalResponse},
+     * serializing only the rentals missing from the cache.
+     */
+    public byte[] writePage(List<RentalResponse> rentals, String next) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 + rentals.size() * 1024);
+            out.writeBytes(PAGE_START);
+            for (int i = 0; i < rentals.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.writeBytes(json(rentals.get(i)));
+            }
+            out.writeBytes(PAGE_NEXT);
+            out.writeBytes(nextWriter.writeValueAsBytes(next));
+            out.write('}');
+            return out.toByteArray();
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private byte[] json(RentalResponse rental) throws JsonProcessingException {
+        Entry entry = cache.getIfPresent(rental.getId());
+        if (entry != null && Objects.equals(entry.updatedAt(), rental.getUpdatedAt())) {
+            return entry.json();
+        }
+        byte[] json = rentalWriter.writeValueAsBytes(rental);
+        cache.put(rental.getId(), new Entry(rental.getUpdatedAt(), json));
+        return json;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRentalChanged(RentalChangedEvent event) {
+        cache.invalidate(event.id());
+    }
+}
@@ -0,0 +1,290 @@
+package openclassroom.com.rental.service;
+
+import jakarta.annotation.PreDestroy;
+import openclassroom.com.rental.dto.rental.ListRentalResponse;
+import openclassroom.com.rental.dto.rental.RentalResponse;
+import openclassroom.com.rental.dto.rental.RentalText;
+import openclassroom.com.rental.repository.RentalRepository;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory Lucene index over rental names and descriptions.
+ * It is rebuilt from the database at startup and kept current from committed
+ * {@link RentalChangedEvent}s. Hits are loaded from the database, so prices and
+ * pictures are never stale.
+ */
+@Service
+public class RentalSearchService {
+    private static final Logger logger = LoggerFactory.getLogger(RentalSearchService.class);
+
+    static final int MAX_RESULTS = 1000;
+    private static final int MAX_TERMS = 10;
+    private static final String ID = "id";
+    private static final String NAME = "name";
+    private static final String DESCRIPTION = "description";
+
+    private final RentalRepository rentalRepository;
+    private final int rebuildThreads;
+    private final int rebuildBatchSize;
+
+    // Lower-cased and accent-folded, so "Sejour" finds "Séjour"
+    private final Analyzer analyzer = new Analyzer() {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            Tokenizer tokenizer = new StandardTokenizer();
+            TokenStream stream = new ASCIIFoldingFilter(new LowerCaseFilter(tokenizer));
+            return new TokenStreamComponents(tokenizer, stream);
+        }
+    };
+    private final Directory directory = new ByteBuffersDirectory();
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+
+    // Serializes event updates with the end of a rebuild. A lock rather than synchronized,
+    // so an event applied on a virtual thread doesn't pin its carrier while the index writes
+    private final Lock changeLock = new ReentrantLock();
+    // Latest change per rental seen while a rebuild runs, null otherwise
+    private Map<Integer, RentalChangedEvent> changedDuringRebuild;
+
+    public RentalSearchService(
+            RentalRepository rentalRepository,
+            @Value("${search.rebuild-threads:0}") int rebuildThreads,
+            @Value("${search.rebuild-batch-size:5000}") int rebuildBatchSize) throws IOException {
+        this.rentalRepository = rentalRepository;
+        this.rebuildThreads = rebuildThreads > 0 ? rebuildThreads : Runtime.getRuntime().availableProcessors();
+        this.rebuildBatchSize = rebuildBatchSize;
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+        this.searcherManager = new SearcherManager(writer, null);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    /**
+     * Reindexes every rental. The id space is split into slices that are read and indexed
+     * concurrently; IndexWriter accepts documents from several threads at once.
+     * A slice may index a row read before a change whose event was already applied, so
+     * the changes seen during the rebuild are applied again once every slice is done.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.nanoTime();
+        changeLock.lock();
+        try {
+            changedDuringRebuild = new HashMap<>();
+        } finally {
+            changeLock.unlock();
+        }
+        int maxId = rentalRepository.findMaxId();
+        ExecutorService pool = Executors.newFixedThreadPool(rebuildThreads);
+        try {
+            List<Future<Integer>> slices = new ArrayList<>();
+            for (int from = 0; from < maxId; from += rebuildBatchSize) {
+                int fromId = from;
+                int toId = Math.min(from + rebuildBatchSize, maxId);
+                slices.add(pool.submit(() -> indexSlice(fromId, toId)));
+            }
+            int indexed = 0;
+            for (Future<Integer> slice : slices) {
+                indexed += slice.get();
+            }
+            changeLock.lock();
+            try {
+                for (RentalChangedEvent event : changedDuringRebuild.values()) {
+                    apply(event);
+                }
+                changedDuringRebuild = null;
+            } finally {
+                changeLock.unlock();
+            }
+            searcherManager.maybeRefreshBlocking();
+            logger.info("Indexed {} rentals in {} ms using {} threads",
+                    indexed, (System.nanoTime() - start) / 1_000_000, rebuildThreads);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | IOException ex) {
+            logger.error("Could not rebuild the rental search index", ex);
+        } finally {
+            pool.shutdownNow();
+            changeLock.lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                changeLock.unlock();
+            }
+        }
+    }
+
+    private int indexSlice(int fromId, int toId) throws IOException {
+        List<RentalText> rentals = rentalRepository.findTextInRange(fromId, toId);
+        for (RentalText rental : rentals) {
+            // Keyed by id, so a save that lands during the rebuild doesn't leave a duplicate
+            writer.updateDocument(new Term(ID, String.valueOf(rental.getId())), document(rental));
+        }
+        return rentals.size();
+    }
+
+    // Runs after the transaction commits, so rolled back changes never reach the index
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRentalChanged(RentalChangedEvent event) {
+        try {
+            changeLock.lock();
+            try {
+                if (changedDuringRebuild != null) {
+                    changedDuringRebuild.put(event.id(), event);
+                }
+                apply(event);
+            } finally {
+                changeLock.unlock();
+            }
+            searcherManager.maybeRefresh();
+        } catch (IOException ex) {
+            logger.error("Could not update the search index for rental {}", event.id(), ex);
+        }
+    }
+
+    private void apply(RentalChangedEvent event) throws IOException {
+        Term id = new Term(ID, String.valueOf(event.id()));
+        if (event.text() == null) {
+            writer.deleteDocuments(id);
+        } else {
+            writer.updateDocument(id, document(event.text()));
+        }
+    }
+
+    /**
+     * Returns the given page of rentals matching every word of the query, best match first.
+     * Each word also matches as a prefix, and a match in the name ranks above one in the description.
+     * {@code next} holds the following page number, if there is one.
+     */
+    public ListRentalResponse search(String text, int page, int size) {
+        Query query = parse(text);
+        // In long arithmetic: a huge page number must not wrap around to a negative offset
+        long first = (long) page * size;
+        if (query == null || page < 0 || size < 1 || first >= MAX_RESULTS) {
+            return new ListRentalResponse(List.of(), null);
+        }
+        int offset = (int) first;
+        int end = (int) Math.min(first + size, MAX_RESULTS);
+        List<Integer> ids = new ArrayList<>(size);
+        boolean hasNext;
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopDocs top = searcher.search(query, Math.min(end + 1, MAX_RESULTS));
+                StoredFields storedFields = searcher.storedFields();
+                ScoreDoc[] hits = top.scoreDocs;
+                for (int i = offset; i < Math.min(hits.length, end); i++) {
+                    ids.add(Integer.valueOf(storedFields.document(hits[i].doc).get(ID)));
+                }
+                hasNext = hits.length > end;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if (ids.isEmpty()) {
+            return new ListRentalResponse(List.of(), null);
+        }
+        Map<Integer, RentalResponse> byId = rentalRepository.findResponsesByIdIn(ids).stream()
+                .collect(Collectors.toMap(RentalResponse::getId, Function.identity()));
+        List<RentalResponse> rentals = ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+        return new ListRentalResponse(rentals, hasNext ? String.valueOf(page + 1) : null);
+    }
+
+    private Query parse(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        int terms = 0;
+        try (TokenStream stream = analyzer.tokenStream(NAME, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken() && terms < MAX_TERMS) {
+                String word = term.toString();
+                Query wordQuery = new BooleanQuery.Builder()
+                        .add(new BoostQuery(new TermQuery(new Term(NAME, word)), 3f), BooleanClause.Occur.SHOULD)
+                        .add(new TermQuery(new Term(DESCRIPTION, word)), BooleanClause.Occur.SHOULD)
+                        .add(new BoostQuery(new PrefixQuery(new Term(NAME, word)), 1.5f), BooleanClause.Occur.SHOULD)
+                        .add(new BoostQuery(new PrefixQuery(new Term(DESCRIPTION, word)), 0.5f), BooleanClause.Occur.SHOULD)
+                        .build();
+                query.add(wordQuery, BooleanClause.Occur.MUST);
+                terms++;
+            }
+            stream.end();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return terms == 0 ? null : query.build();
+    }
+
+    private static Document document(RentalText rental) {
+        Document document = new Document();
+        document.add(new StringField(ID, String.valueOf(rental.getId()), Field.Store.YES));
+        if (rental.getName() != null) {
+            document.add(new TextField(NAME, rental.getName(), Field.Store.NO));
+        }
+        if (rental.getDescription() != null) {
+            document.add(new TextField(DESCRIPTION, rental.getDescription(), Field.Store.NO));
+        }
+        return document;
+    }
+}
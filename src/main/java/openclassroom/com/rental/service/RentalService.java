@@ -1,20 +1,35 @@
 package openclassroom.com.rental.service;
 
+import io.micrometer.core.annotation.Timed;
+import openclassroom.com.rental.dto.KeysetCursor;
+import openclassroom.com.rental.dto.rental.RentalFilter;
+import openclassroom.com.rental.dto.rental.RentalResponse;
+import openclassroom.com.rental.dto.rental.RentalText;
+import openclassroom.com.rental.dto.rental.RentalsVersion;
 import openclassroom.com.rental.entity.Rental;
 import openclassroom.com.rental.repository.RentalRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
+@Timed(value = "service.method", description = "Time spent in a service method")
 public class RentalService {
 
     private final RentalRepository rentalRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public RentalService(RentalRepository rentalRepository) {
+    public RentalService(RentalRepository rentalRepository, ApplicationEventPublisher eventPublisher) {
         this.rentalRepository = rentalRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional(readOnly = true)
@@ -22,18 +37,87 @@ public class RentalService {
         return rentalRepository.findAll();
     }
 
+    /**
+     * Returns up to {@code limit} rentals following the cursor (newest first).
+     * Callers ask for one extra row to know whether another page exists.
+     */
+    @Transactional(readOnly = true)
+    public List<RentalResponse> findRentalsPage(RentalFilter filter, KeysetCursor cursor, int limit) {
+        if (cursor == null) {
+            return rentalRepository.findFirstPage(filter.getMinPrice(), filter.getMaxPrice(),
+                    filter.getMinSurface(), filter.getMaxSurface(), filter.getOwnerId(), Limit.of(limit));
+        }
+        return rentalRepository.findPageAfter(filter.getMinPrice(), filter.getMaxPrice(),
+                filter.getMinSurface(), filter.getMaxSurface(), filter.getOwnerId(),
+                cursor.getCreatedAt(), cursor.getId(), Limit.of(limit));
+    }
+
+    /**
+     * Hands every rental to the consumer one row at a time, without materialising the list.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllRentals(Consumer<RentalResponse> consumer) {
+        try (Stream<RentalResponse> rentals = rentalRepository.streamAll()) {
+            rentals.forEach(consumer);
+        }
+    }
+
     @Transactional(readOnly = true)
     public Optional<Rental> findRentalById(Integer id) {
         return rentalRepository.findById(id);
     }
 
+    @Transactional(readOnly = true)
+    public Optional<RentalResponse> findRentalResponseById(Integer id) {
+        return rentalRepository.findResponseById(id);
+    }
+
+    // Counts the table: callers go through RentalsVersionCache
+    @Transactional(readOnly = true)
+    public RentalsVersion findRentalsVersion() {
+        return rentalRepository.findVersion();
+    }
+
     @Transactional
     public Rental saveRental(Rental rental) {
-        return rentalRepository.save(rental);
+        Rental saved = rentalRepository.save(rental);
+        eventPublisher.publishEvent(new RentalChangedEvent(saved.getId(),
+                new RentalText(saved.getId(), saved.getName(), saved.getDescription())));
+        return saved;
+    }
+
+    /**
+     * Updates the rental in one statement if it belongs to the owner. A null picture keeps the current one.
+     * Returns false when no such rental belongs to the owner.
+     */
+    @Transactional
+    public boolean updateOwnedRental(Integer id, Integer ownerId, String name, BigDecimal surface,
+                                     BigDecimal price, String description, String pictureUrl) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        int updated = pictureUrl == null
+                ? rentalRepository.updateOwned(id, ownerId, name, surface, price, description, now)
+                : rentalRepository.updateOwnedWithPicture(id, ownerId, name, surface, price, description, pictureUrl, now);
+        if (updated == 0) {
+            return false;
+        }
+        eventPublisher.publishEvent(new RentalChangedEvent(id, new RentalText(id, name, description)));
+        return true;
+    }
+
+    @Transactional(readOnly = true)
+    public boolean existsRental(Integer id) {
+        return rentalRepository.existsById(id);
+    }
+
+    @Transactional
+    public boolean applyPictureVariants(Integer id, String originalUrl, String pictureUrl, String thumbnailUrl) {
+        return rentalRepository.updatePictures(id, originalUrl, pictureUrl, thumbnailUrl,
+                new Timestamp(System.currentTimeMillis())) > 0;
     }
 
     @Transactional
     public void deleteRental(Integer id) {
         rentalRepository.deleteById(id);
+        eventPublisher.publishEvent(RentalChangedEvent.deleted(id));
     }
 }
@@ -0,0 +1,43 @@
+package openclassroom.com.rental.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import openclassroom.com.rental.dto.rental.RentalsVersion;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+
+/**
+ * Version of the whole rentals table, used to validate listing pages without counting
+ * the table on each request. Committed changes made here drop it at once; changes made
+ * by another instance or by bulk updates are seen once it expires (rentals.version-cache.ttl).
+ */
+@Component
+public class RentalsVersionCache {
+    private static final String KEY = "rentals";
+
+    private final LoadingCache<String, RentalsVersion> version;
+
+    public RentalsVersionCache(RentalService rentalService,
+                               @Value("${rentals.version-cache.ttl:5s}") Duration ttl) {
+        this.version = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .build(key -> rentalService.findRentalsVersion());
+    }
+
+    public RentalsVersion get() {
+        return version.get(KEY);
+    }
+
+    // Waits for a load in progress, so a version read before the commit is never kept
+    public void invalidate() {
+        version.invalidate(KEY);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRentalChanged(RentalChangedEvent event) {
+        invalidate();
+    }
+}
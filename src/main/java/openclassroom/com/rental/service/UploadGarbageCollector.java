@@ -0,0 +1,101 @@
+package openclassroom.com.rental.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import openclassroom.com.rental.repository.RentalRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Deletes content-addressed uploads that no rental references anymore.
+ * Only files named after a SHA-256 (and their renditions) are considered,
+ * and only once they are older than the grace period. A stored file's age is
+ * checked again under the store lock right before it is deleted, so a
+ * duplicate upload committed during the sweep keeps it alive.
+ */
+@Component
+public class UploadGarbageCollector {
+    private static final Logger logger = LoggerFactory.getLogger(UploadGarbageCollector.class);
+    private static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{64}(-thumb|-full)?\\.[A-Za-z0-9]+");
+
+    private final RentalRepository rentalRepository;
+    private final FileStorageService fileStorageService;
+    private final Counter bytesReclaimed;
+
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+
+    @Value("${file.gc.grace-period:1h}")
+    private Duration gracePeriod;
+
+    public UploadGarbageCollector(RentalRepository rentalRepository, FileStorageService fileStorageService,
+                                  MeterRegistry meterRegistry) {
+        this.rentalRepository = rentalRepository;
+        this.fileStorageService = fileStorageService;
+        this.bytesReclaimed = Counter.builder("uploads.gc.bytes.reclaimed")
+                .description("Bytes freed by deleting uploads no rental references")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${file.gc.interval:1h}", initialDelayString = "${file.gc.interval:1h}")
+    @Transactional(readOnly = true)
+    public void collect() {
+        Path uploadPath = Paths.get(uploadDir);
+        if (!Files.isDirectory(uploadPath)) {
+            return;
+        }
+        Set<String> referenced = referencedFiles();
+        long cutoff = System.currentTimeMillis() - gracePeriod.toMillis();
+        long deletedFiles = 0;
+        long deletedBytes = 0;
+        try (Stream<Path> files = Files.list(uploadPath)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!BLOB_NAME.matcher(name).matches() || referenced.contains(name)) {
+                    continue;
+                }
+                long size = fileStorageService.deleteIfUnusedSince(file, cutoff);
+                if (size >= 0) {
+                    deletedFiles++;
+                    deletedBytes += size;
+                }
+            }
+        } catch (IOException ex) {
+            logger.error("Upload garbage collection failed", ex);
+        }
+        bytesReclaimed.increment(deletedBytes);
+        logger.info("Upload garbage collection removed {} files ({} bytes)", deletedFiles, deletedBytes);
+    }
+
+    /**
+     * Names of the stored files some rental points at, through its picture or thumbnail.
+     */
+    Set<String> referencedFiles() {
+        Set<String> names = new HashSet<>();
+        addFileNames(rentalRepository.findAllPictureUrls(), names);
+        addFileNames(rentalRepository.findAllThumbnailUrls(), names);
+        return names;
+    }
+
+    private static void addFileNames(List<String> urls, Set<String> names) {
+        for (String url : urls) {
+            names.add(url.substring(url.lastIndexOf('/') + 1));
+        }
+    }
+}
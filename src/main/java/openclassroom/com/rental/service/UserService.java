@@ -1,7 +1,16 @@
 package openclassroom.com.rental.service;
 
+import io.micrometer.core.annotation.Timed;
+import openclassroom.com.rental.config.CacheConfig;
+import openclassroom.com.rental.dto.user.UserAccount;
 import openclassroom.com.rental.entity.User;
+import openclassroom.com.rental.exception.ConflictException;
 import openclassroom.com.rental.repository.UserRepository;
+import openclassroom.com.rental.security.TokenVersionRegistry;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -9,12 +18,15 @@ import java.util.List;
 import java.util.Optional;
 
 @Service
+@Timed(value = "service.method", description = "Time spent in a service method")
 public class UserService {
 
     private final UserRepository userRepository;
+    private final TokenVersionRegistry tokenVersionRegistry;
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, TokenVersionRegistry tokenVersionRegistry) {
         this.userRepository = userRepository;
+        this.tokenVersionRegistry = tokenVersionRegistry;
     }
 
     @Transactional(readOnly = true)
@@ -22,24 +34,102 @@ public class UserService {
         return userRepository.findAll();
     }
 
+    @Cacheable(value = CacheConfig.USERS_BY_ID, key = "#id", sync = true)
     @Transactional(readOnly = true)
-    public Optional<User> findUserById(Integer id) {
-        return userRepository.findById(id);
+    public Optional<UserAccount> findUserById(Integer id) {
+        return userRepository.findById(id).map(UserAccount::from);
     }
 
+    /**
+     * A proxy carrying only the id, for setting foreign keys without reading the row.
+     */
+    public User getUserReference(Integer id) {
+        return userRepository.getReferenceById(id);
+    }
+
+    @Cacheable(value = CacheConfig.USERS_BY_EMAIL, key = "#email", sync = true)
     @Transactional(readOnly = true)
-    public Optional<User> findByEmail(String email) {
-        return userRepository.findByEmail(email);
+    public Optional<UserAccount> findByEmail(String email) {
+        return userRepository.findByEmail(email).map(UserAccount::from);
+    }
+
+    /**
+     * Fails with a {@link ConflictException} if the email or the name is already registered.
+     * One indexed query; concurrent registrations are settled by the unique constraints in {@link #register}.
+     */
+    @Transactional(readOnly = true)
+    public void checkAvailable(String email, String name) {
+        List<String> taken = userRepository.findEmailsByEmailOrName(email, name);
+        if (taken.isEmpty()) {
+            return;
+        }
+        if (taken.stream().anyMatch(email::equalsIgnoreCase)) {
+            throw new ConflictException("Email is already in use");
+        }
+        throw new ConflictException("Name is already in use");
+    }
+
+    /**
+     * Inserts a new user. A concurrent registration of the same email or name that
+     * committed first makes this fail with a {@link ConflictException}.
+     */
+    // Only this email's entry can be stale: a login attempt may have cached it as unknown
+    @CacheEvict(value = CacheConfig.USERS_BY_EMAIL, key = "#user.email")
+    @Transactional
+    public User register(User user) {
+        try {
+            return userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException ex) {
+            String detail = String.valueOf(ex.getMostSpecificCause().getMessage()).toLowerCase();
+            throw new ConflictException(detail.contains(User.EMAIL_CONSTRAINT)
+                    ? "Email is already in use" : "Name is already in use");
+        }
     }
 
+    // The email index is cleared entirely: the previous email of the user is not known here
+    @Caching(evict = {
+            @CacheEvict(value = CacheConfig.USERS_BY_EMAIL, allEntries = true),
+            @CacheEvict(value = CacheConfig.USERS_BY_ID, key = "#result.id")
+    })
     @Transactional
     public User saveUser(User user) {
         return userRepository.save(user);
     }
 
+    @Caching(evict = {
+            @CacheEvict(value = CacheConfig.USERS_BY_EMAIL, allEntries = true),
+            @CacheEvict(value = CacheConfig.USERS_BY_ID, key = "#id")
+    })
     @Transactional
     public void deleteUser(Integer id) {
         userRepository.deleteById(id);
+        tokenVersionRegistry.delete(id);
+    }
+
+    /**
+     * Replaces the stored password hash, e.g. when it is upgraded to the current algorithm.
+     */
+    @Caching(evict = {
+            @CacheEvict(value = CacheConfig.USERS_BY_EMAIL, allEntries = true),
+            @CacheEvict(value = CacheConfig.USERS_BY_ID, key = "#id")
+    })
+    @Transactional
+    public void updatePassword(Integer id, String encodedPassword) {
+        userRepository.updatePassword(id, encodedPassword);
+    }
+
+    /**
+     * Invalidates every token issued to the user so far.
+     */
+    @Caching(evict = {
+            @CacheEvict(value = CacheConfig.USERS_BY_EMAIL, allEntries = true),
+            @CacheEvict(value = CacheConfig.USERS_BY_ID, key = "#id")
+    })
+    @Transactional
+    public void revokeTokens(Integer id) {
+        userRepository.incrementTokenVersion(id);
+        userRepository.findById(id)
+                .ifPresent(user -> tokenVersionRegistry.update(user.getId(), user.getTokenVersion()));
     }
 
 }
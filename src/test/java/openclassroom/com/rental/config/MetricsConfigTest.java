@@ -0,0 +1,132 @@
+package openclassroom.com.rental.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import openclassroom.com.rental.repository.CustomUserDetailsService;
+import openclassroom.com.rental.repository.MessageRepository;
+import openclassroom.com.rental.repository.RentalRepository;
+import openclassroom.com.rental.repository.UserRepository;
+import openclassroom.com.rental.security.JwtFilter;
+import openclassroom.com.rental.security.JwtService;
+import openclassroom.com.rental.security.ScrapeAuthorizationManager;
+import openclassroom.com.rental.security.TokenVersionRegistry;
+import openclassroom.com.rental.service.FileStorageService;
+import openclassroom.com.rental.service.MessageService;
+import openclassroom.com.rental.service.RentalService;
+import openclassroom.com.rental.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.aop.AopAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class MetricsConfigTest {
+
+    private static final String EXPOSURE = "management.endpoints.web.exposure.include";
+
+    private static void request(PrometheusMeterRegistry registry, String uri) {
+        Timer.builder(MetricsConfig.HTTP_SERVER_REQUESTS)
+                .tag("uri", uri)
+                .register(registry)
+                .record(Duration.ofMillis(5));
+    }
+
+    @Test
+    void histogramBucketsArePublishedForListedRoutesOnly() {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        registry.config().meterFilter(MetricsConfig.routeHistograms(
+                new String[] {"/api/rentals/{id}", " "}, Duration.ofMillis(100)));
+
+        request(registry, "/api/rentals/{id}");
+        request(registry, "/api/messages");
+
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains("http_server_requests_seconds_bucket{uri=\"/api/rentals/{id}\",le=\"0.005592405\"}"), scrape);
+        assertFalse(scrape.contains("http_server_requests_seconds_bucket{uri=\"/api/messages\",le=\"0.005592405\"}"), scrape);
+        assertTrue(scrape.contains("http_server_requests_seconds_bucket{uri=\"/api/messages\",le=\"0.1\"} 1"), scrape);
+    }
+
+    @Test
+    void applicationMetersAreRegistered() {
+        new ApplicationContextRunner()
+                // Converts the Duration settings, as SpringApplication does
+                .withInitializer(context -> context.getBeanFactory()
+                        .setConversionService(ApplicationConversionService.getSharedInstance()))
+                .withConfiguration(AutoConfigurations.of(AopAutoConfiguration.class))
+                .withUserConfiguration(MetricsConfig.class)
+                .withBean(SimpleMeterRegistry.class)
+                .withBean(RentalService.class)
+                .withBean(MessageService.class)
+                .withBean(UserService.class)
+                .withBean(FileStorageService.class)
+                .withBean(JwtFilter.class)
+                .withBean(RentalRepository.class, () -> mock(RentalRepository.class))
+                .withBean(MessageRepository.class, () -> mock(MessageRepository.class))
+                .withBean(UserRepository.class, () -> mock(UserRepository.class))
+                .withBean(JdbcTemplate.class, () -> mock(JdbcTemplate.class))
+                .withBean(TokenVersionRegistry.class, () -> mock(TokenVersionRegistry.class))
+                .withBean(CustomUserDetailsService.class, () -> mock(CustomUserDetailsService.class))
+                .withBean(JwtService.class, () -> mock(JwtService.class))
+                .run(context -> {
+                    context.getBean(RentalService.class).existsRental(1);
+                    context.getBean(MessageService.class).findMessageById(1);
+                    context.getBean(UserService.class).findUserById(1);
+
+                    MeterRegistry registry = context.getBean(MeterRegistry.class);
+                    for (Class<?> service : List.of(RentalService.class, MessageService.class, UserService.class)) {
+                        assertEquals(1, registry.get("service.method").tag("class", service.getName()).timer().count(),
+                                service.getSimpleName());
+                    }
+                    assertEquals(4, registry.get("jwt.authentication").timers().size());
+                    assertEquals(2, registry.get("uploads.store").timers().size());
+                });
+    }
+
+    @Test
+    void scrapeNeedsItsOwnCredentials() {
+        String basic = "Basic " + Base64.getEncoder().encodeToString("prometheus:s3cret".getBytes());
+
+        assertTrue(scrape(new ScrapeAuthorizationManager("prometheus", "s3cret"), basic));
+        assertFalse(scrape(new ScrapeAuthorizationManager("prometheus", "other"), basic));
+        assertFalse(scrape(new ScrapeAuthorizationManager("prometheus", "s3cret"), "Bearer a.user.token"));
+        assertFalse(scrape(new ScrapeAuthorizationManager("prometheus", "s3cret"), null));
+        // No password configured: closed
+        assertFalse(scrape(new ScrapeAuthorizationManager("prometheus", ""), "Basic " + Base64.getEncoder().encodeToString("prometheus:".getBytes())));
+    }
+
+    private static boolean scrape(ScrapeAuthorizationManager manager, String authorization) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/actuator/prometheus");
+        if (authorization != null) {
+            request.addHeader("Authorization", authorization);
+        }
+        return manager.authorize(() -> null, new RequestAuthorizationContext(request)).isGranted();
+    }
+
+    @Test
+    void prometheusIsExposedUnlessConfiguredOtherwise() {
+        MockEnvironment defaults = new MockEnvironment();
+        new ManagementDefaults().postProcessEnvironment(defaults, new SpringApplication());
+        assertEquals("health,prometheus", defaults.getProperty(EXPOSURE));
+
+        MockEnvironment configured = new MockEnvironment().withProperty(EXPOSURE, "health");
+        new ManagementDefaults().postProcessEnvironment(configured, new SpringApplication());
+        assertEquals("health", configured.getProperty(EXPOSURE));
+    }
+}
@@ -0,0 +1,145 @@
+package openclassroom.com.rental.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+class ReplicaRoutingDataSourceTest {
+
+    private JdbcTemplate primaryJdbc;
+    private JdbcTemplate replicaJdbc;
+    private ReplicaLagMonitor lagMonitor;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+
+    @BeforeEach
+    void setUp() {
+        DataSource primary = database();
+        DataSource replica = database();
+        primaryJdbc = new JdbcTemplate(primary);
+        replicaJdbc = new JdbcTemplate(replica);
+        primaryJdbc.execute("CREATE TABLE marker (name VARCHAR(10))");
+        primaryJdbc.update("INSERT INTO marker VALUES ('primary')");
+        replicaJdbc.execute("CREATE TABLE marker (name VARCHAR(10))");
+        replicaJdbc.update("INSERT INTO marker VALUES ('replica')");
+        replicaJdbc.execute("CREATE TABLE replica_status (Seconds_Behind_Source INT)");
+        replicaJdbc.update("INSERT INTO replica_status VALUES (0)");
+
+        lagMonitor = new ReplicaLagMonitor(replica, "SELECT Seconds_Behind_Source FROM replica_status",
+                "Seconds_Behind_Source", Duration.ofSeconds(5), new SimpleMeterRegistry());
+        DataSource routing = new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primary, replica, lagMonitor, Duration.ofMinutes(1)));
+        jdbc = new JdbcTemplate(routing);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(routing);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private static DataSource database() {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+    }
+
+    private String read(TransactionTemplate transaction) {
+        return transaction.execute(status -> jdbc.queryForObject("SELECT name FROM marker", String.class));
+    }
+
+    private void writeAs(String user) {
+        signIn(user);
+        readWrite.executeWithoutResult(status -> jdbc.update("CREATE TABLE IF NOT EXISTS writes (id INT)"));
+    }
+
+    private static void signIn(String user) {
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(user, null, List.of()));
+    }
+
+    @Test
+    void readOnlyTransactionsUseTheReplica() {
+        assertEquals("replica", read(readOnly));
+        assertEquals("primary", read(readWrite));
+    }
+
+    @Test
+    void writersReadTheirOwnWritesFromThePrimary() {
+        writeAs("alice");
+        assertEquals("primary", read(readOnly));
+
+        signIn("bob");
+        assertEquals("replica", read(readOnly));
+    }
+
+    @Test
+    void rolledBackWritesDoNotPinTheCaller() {
+        signIn("alice");
+        readWrite.executeWithoutResult(status -> {
+            jdbc.queryForObject("SELECT name FROM marker", String.class);
+            status.setRollbackOnly();
+        });
+
+        assertEquals("replica", read(readOnly));
+    }
+
+    @Test
+    void laggingOrBrokenReplicaSendsReadsToThePrimary() {
+        replicaJdbc.update("UPDATE replica_status SET Seconds_Behind_Source = 30");
+        lagMonitor.check();
+        assertEquals("primary", read(readOnly));
+
+        replicaJdbc.update("UPDATE replica_status SET Seconds_Behind_Source = 1");
+        lagMonitor.check();
+        assertEquals("replica", read(readOnly));
+
+        // A stopped replication thread reports NULL
+        replicaJdbc.update("UPDATE replica_status SET Seconds_Behind_Source = NULL");
+        lagMonitor.check();
+        assertEquals("primary", read(readOnly));
+    }
+
+    @Test
+    void replicaUrlSwitchesTheApplicationDataSourceToRouting() {
+        // The shared conversion service turns "5s" into a Duration, as it does in the application
+        new ApplicationContextRunner()
+                .withInitializer(context -> context.getBeanFactory()
+                        .setConversionService(ApplicationConversionService.getSharedInstance()))
+                .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class))
+                .withUserConfiguration(ReplicaDataSourceConfig.class)
+                .withBean(SimpleMeterRegistry.class)
+                .withPropertyValues(
+                        "spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID(),
+                        "spring.datasource.replica.url=jdbc:h2:mem:" + UUID.randomUUID(),
+                        "spring.datasource.replica.hikari.maximum-pool-size=3")
+                .run(context -> {
+                    assertInstanceOf(LazyConnectionDataSourceProxy.class, context.getBean(DataSource.class));
+                    assertEquals(3, context.getBean("replicaDataSource", HikariDataSource.class)
+                            .getMaximumPoolSize());
+                });
+    }
+}
@@ -0,0 +1,125 @@
+package openclassroom.com.rental.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import openclassroom.com.rental.dto.rental.RentalResponse;
+import openclassroom.com.rental.dto.rental.RentalsVersion;
+import openclassroom.com.rental.exception.GlobalExceptionHandler;
+import openclassroom.com.rental.service.FileStorageService;
+import openclassroom.com.rental.service.ImageVariantService;
+import openclassroom.com.rental.service.RentalJsonCache;
+import openclassroom.com.rental.service.RentalSearchService;
+import openclassroom.com.rental.service.RentalService;
+import openclassroom.com.rental.service.RentalsVersionCache;
+import openclassroom.com.rental.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.security.Principal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class RentalControllerConditionalGetTest {
+    private static final Timestamp UPDATED = Timestamp.valueOf("2024-03-01 10:15:30.123456");
+    private static final Principal USER = UsernamePasswordAuthenticationToken.authenticated("alice", null, List.of());
+
+    private RentalService rentalService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        rentalService = mock(RentalService.class);
+        RentalController controller = new RentalController(rentalService, mock(RentalSearchService.class),
+                mock(UserService.class), mock(FileStorageService.class), mock(ImageVariantService.class),
+                new RentalJsonCache(new ObjectMapper(), DataSize.ofMegabytes(1), new SimpleMeterRegistry()),
+                new RentalsVersionCache(rentalService, Duration.ZERO), new ObjectMapper());
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new GlobalExceptionHandler()).build();
+        when(rentalService.findRentalResponseById(1)).thenReturn(Optional.of(rental(UPDATED)));
+        when(rentalService.findRentalsVersion()).thenReturn(new RentalsVersion(15, 15, 40));
+        when(rentalService.findRentalsPage(any(), any(), anyInt())).thenReturn(List.of());
+    }
+
+    private static RentalResponse rental(Timestamp updatedAt) {
+        return new RentalResponse(1, "Loft", BigDecimal.TEN, BigDecimal.TEN, "http://localhost/uploads/x.jpg",
+                "Industrial", 7, UPDATED, updatedAt);
+    }
+
+    @Test
+    void unchangedRentalIsAnswered304WithoutABody() throws Exception {
+        String etag = mockMvc.perform(get("/api/rentals/1").principal(USER))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+
+        mockMvc.perform(get("/api/rentals/1").principal(USER).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+        mockMvc.perform(get("/api/rentals/1").principal(USER).header(HttpHeaders.IF_MODIFIED_SINCE, "Fri, 01 Mar 2024 10:15:31 GMT"))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void changedRentalIsSentAgain() throws Exception {
+        String etag = mockMvc.perform(get("/api/rentals/1").principal(USER))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        when(rentalService.findRentalResponseById(1)).thenReturn(Optional.of(rental(new Timestamp(UPDATED.getTime() + 1))));
+
+        mockMvc.perform(get("/api/rentals/1").principal(USER).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void listingIsRevalidatedAgainstTheTableVersion() throws Exception {
+        String etag = mockMvc.perform(get("/api/rentals").principal(USER))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.LAST_MODIFIED))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+
+        mockMvc.perform(get("/api/rentals").principal(USER).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        // An update raises the revisions, whatever its updated_at
+        when(rentalService.findRentalsVersion()).thenReturn(new RentalsVersion(15, 15, 41));
+        mockMvc.perform(get("/api/rentals").principal(USER).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+
+        // A deletion lowers the count
+        when(rentalService.findRentalsVersion()).thenReturn(new RentalsVersion(14, 15, 40));
+        mockMvc.perform(get("/api/rentals").principal(USER).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void unknownRentalIsStillNotFound() throws Exception {
+        when(rentalService.findRentalResponseById(2)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/rentals/2").principal(USER).header(HttpHeaders.IF_NONE_MATCH, "*"))
+                .andExpect(status().isNotFound());
+        verify(rentalService, never()).findRentalsPage(any(), any(), anyInt());
+    }
+}
@@ -0,0 +1,83 @@
+package openclassroom.com.rental.controller;
+
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UploadServletTest {
+    private static final String HASH = "a".repeat(64);
+    private static final byte[] PICTURE = "not really a jpeg".getBytes();
+
+    @TempDir
+    Path uploadDir;
+
+    private UploadServlet servlet;
+
+    @BeforeEach
+    void setUp() throws IOException, ServletException {
+        Files.write(uploadDir.resolve(HASH + ".jpg"), PICTURE);
+        Files.write(uploadDir.resolve(HASH + ".jpg.br"), "brotli".getBytes());
+        Files.write(uploadDir.resolve(HASH + ".jpg.gz"), "gzip".getBytes());
+        servlet = new UploadServlet(uploadDir);
+        servlet.init(new MockServletConfig());
+    }
+
+    private MockHttpServletResponse get(String... headers) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/uploads/" + HASH + ".jpg");
+        request.setPathInfo("/" + HASH + ".jpg");
+        for (int i = 0; i < headers.length; i += 2) {
+            request.addHeader(headers[i], headers[i + 1]);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        servlet.service(request, response);
+        return response;
+    }
+
+    @Test
+    void eachEncodingHasItsOwnStrongETag() throws ServletException, IOException {
+        MockHttpServletResponse brotli = get("Accept-Encoding", "gzip, br");
+        assertEquals("\"" + HASH + "-br\"", brotli.getHeader("ETag"));
+        assertEquals("br", brotli.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", brotli.getHeader("Vary"));
+
+        MockHttpServletResponse gzip = get("Accept-Encoding", "gzip");
+        assertEquals("\"" + HASH + "-gz\"", gzip.getHeader("ETag"));
+        assertEquals("gzip", gzip.getHeader("Content-Encoding"));
+
+        MockHttpServletResponse identity = get();
+        assertEquals("\"" + HASH + "\"", identity.getHeader("ETag"));
+        assertNull(identity.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", identity.getHeader("Vary"));
+
+        // A validator cached for one encoding does not revalidate another
+        assertEquals(200, get("Accept-Encoding", "br", "If-None-Match", "\"" + HASH + "\"").getStatus());
+        MockHttpServletResponse notModified = get("Accept-Encoding", "br", "If-None-Match", "\"" + HASH + "-br\"");
+        assertEquals(304, notModified.getStatus());
+        assertNull(notModified.getHeader("Content-Encoding"));
+    }
+
+    @Test
+    void weakIfRangeSendsTheWholeFile() throws ServletException, IOException {
+        MockHttpServletResponse weak = get("Range", "bytes=0-3", "If-Range", "W/\"" + HASH + "\"");
+        assertEquals(200, weak.getStatus());
+        assertNull(weak.getHeader("Content-Range"));
+        assertArrayEquals(PICTURE, weak.getContentAsByteArray());
+
+        MockHttpServletResponse strong = get("Range", "bytes=0-3", "If-Range", "\"" + HASH + "\"");
+        assertEquals(206, strong.getStatus());
+        assertEquals("bytes 0-3/" + PICTURE.length, strong.getHeader("Content-Range"));
+        assertEquals("not ", strong.getContentAsString());
+    }
+}
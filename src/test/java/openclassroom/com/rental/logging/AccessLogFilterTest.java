@@ -0,0 +1,116 @@
+package openclassroom.com.rental.logging;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletException;
+import openclassroom.com.rental.security.AuthenticatedUser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccessLogFilterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private final Logger accessLogger = (Logger) LoggerFactory.getLogger(AccessLogFilter.LOGGER_NAME);
+
+    @BeforeEach
+    void setUp() {
+        appender.start();
+        accessLogger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        accessLogger.detachAppender(appender);
+        SecurityContextHolder.clearContext();
+    }
+
+    private List<JsonNode> lines() throws IOException {
+        List<JsonNode> lines = new ArrayList<>();
+        for (ILoggingEvent event : appender.list) {
+            // The layout adds the timestamp and the enclosing braces
+            lines.add(objectMapper.readTree("{" + event.getFormattedMessage() + "}"));
+        }
+        return lines;
+    }
+
+    @Test
+    void logsRouteStatusUserDatabaseTimeAndBytes() throws Exception {
+        AccessLogFilter filter = new AccessLogFilter(new String[0]);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/rentals/7");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> {
+            AuthenticatedUser user = new AuthenticatedUser(42, "alice@test.com", null, List.of(), 0);
+            SecurityContextHolder.getContext().setAuthentication(
+                    new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/rentals/{id}");
+            DbTimeListener session = new DbTimeListener();
+            session.jdbcExecuteStatementStart();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(2));
+            session.jdbcExecuteStatementEnd();
+            res.setContentLength(123);
+        });
+
+        JsonNode line = lines().get(0);
+        assertEquals("GET", line.get("method").asText());
+        assertEquals("/api/rentals/{id}", line.get("route").asText());
+        assertEquals(200, line.get("status").asInt());
+        assertEquals(42, line.get("user_id").asInt());
+        assertEquals(123, line.get("bytes").asLong());
+        assertTrue(line.get("db_us").asLong() >= 2000, line.toString());
+        assertTrue(line.get("latency_us").asLong() >= line.get("db_us").asLong(), line.toString());
+    }
+
+    @Test
+    void statementsOutsideALoggedRequestAreIgnored() {
+        DbTimeListener session = new DbTimeListener();
+        session.jdbcExecuteStatementStart();
+        session.jdbcExecuteStatementEnd();
+
+        DbTimeListener.begin();
+        assertEquals(0, DbTimeListener.finish());
+    }
+
+    @Test
+    void sampledRoutesStillLogServerErrors() throws Exception {
+        AccessLogFilter filter = new AccessLogFilter(new String[]{"/uploads/**=0", " "});
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/uploads/a.jpg"), new MockHttpServletResponse(),
+                (req, res) -> {
+                });
+        assertThrows(ServletException.class, () -> filter.doFilter(new MockHttpServletRequest("GET", "/uploads/b.jpg"),
+                new MockHttpServletResponse(), (req, res) -> {
+                    throw new ServletException("disk failure");
+                }));
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/rentals"), new MockHttpServletResponse(),
+                (req, res) -> {
+                });
+
+        List<JsonNode> lines = lines();
+        assertEquals(2, lines.size());
+        assertEquals(500, lines.get(0).get("status").asInt());
+        assertTrue(lines.get(0).get("user_id").isNull());
+        assertEquals(200, lines.get(1).get("status").asInt());
+    }
+}
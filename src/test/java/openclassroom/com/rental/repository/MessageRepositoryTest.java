@@ -0,0 +1,138 @@
+package openclassroom.com.rental.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import openclassroom.com.rental.dto.KeysetCursor;
+import openclassroom.com.rental.dto.message.MessageDetailResponse;
+import openclassroom.com.rental.entity.Message;
+import openclassroom.com.rental.entity.Rental;
+import openclassroom.com.rental.entity.User;
+import openclassroom.com.rental.service.MessageService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(MessageService.class)
+class MessageRepositoryTest {
+    private static final int CONVERSATION_SIZE = 1000;
+    private static final int PAGE_SIZE = 20;
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private MessageService messageService;
+
+    private Statistics statistics;
+    private Integer rentalId;
+    private Integer userId;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setName("tenant");
+        user.setEmail("tenant@test.com");
+        user.setPassword("secret");
+        entityManager.persist(user);
+        Rental rental = null;
+        for (int r = 0; r < 2; r++) {
+            rental = new Rental();
+            rental.setName("rental " + r);
+            rental.setSurface(BigDecimal.TEN);
+            rental.setPrice(BigDecimal.TEN);
+            rental.setOwner(user);
+            entityManager.persist(rental);
+            // Three messages per timestamp, so the id tie-breaker is exercised
+            long base = System.currentTimeMillis() - CONVERSATION_SIZE * 1000L;
+            for (int m = 0; m < CONVERSATION_SIZE; m++) {
+                Message message = new Message();
+                message.setRental(rental);
+                message.setUser(user);
+                message.setMessage("message " + m);
+                message.setCreatedAt(new Timestamp(base + (m / 3) * 1000L));
+                entityManager.persist(message);
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        rentalId = rental.getId();
+        userId = user.getId();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void everyPageOfAConversationCostsOneStatement() {
+        Set<Integer> seen = new HashSet<>();
+        KeysetCursor cursor = null;
+        Timestamp previous = null;
+        int pages = 0;
+        while (true) {
+            statistics.clear();
+            List<MessageDetailResponse> page = messageService.findRentalMessagesPage(rentalId, cursor, PAGE_SIZE);
+
+            assertEquals(1, statistics.getPrepareStatementCount(), "page " + pages);
+            assertEquals(0, statistics.getEntityLoadCount(), "page " + pages);
+            for (MessageDetailResponse message : page) {
+                assertEquals(rentalId, message.getRental_id());
+                assertTrue(seen.add(message.getId()), "message " + message.getId() + " returned twice");
+                assertTrue(previous == null || !message.getCreatedAt().after(previous), "not newest first");
+                previous = message.getCreatedAt();
+            }
+            if (page.size() < PAGE_SIZE) {
+                break;
+            }
+            MessageDetailResponse last = page.get(page.size() - 1);
+            cursor = new KeysetCursor(last.getCreatedAt(), last.getId());
+            pages++;
+        }
+        assertEquals(CONVERSATION_SIZE, seen.size());
+    }
+
+    @Test
+    void deepPagesSeekThroughTheIndex() {
+        // The last page, which an OFFSET query would reach by skipping every earlier row
+        List<MessageDetailResponse> all = messageService.findRentalMessagesPage(rentalId, null, CONVERSATION_SIZE);
+        MessageDetailResponse anchor = all.get(CONVERSATION_SIZE - PAGE_SIZE - 1);
+        String plan = (String) entityManager.createNativeQuery("""
+                EXPLAIN SELECT id FROM messages
+                WHERE rental_id = ? AND (created_at < ? OR (created_at = ? AND id < ?))
+                ORDER BY created_at DESC, id DESC
+                FETCH FIRST 20 ROWS ONLY
+                """)
+                .setParameter(1, rentalId)
+                .setParameter(2, anchor.getCreatedAt())
+                .setParameter(3, anchor.getCreatedAt())
+                .setParameter(4, anchor.getId())
+                .getSingleResult();
+
+        assertTrue(plan.toLowerCase().contains("idx_messages_rental_created_id"), plan);
+
+        List<MessageDetailResponse> last = messageService.findRentalMessagesPage(rentalId,
+                new KeysetCursor(anchor.getCreatedAt(), anchor.getId()), PAGE_SIZE + 1);
+        assertEquals(all.subList(CONVERSATION_SIZE - PAGE_SIZE, CONVERSATION_SIZE).stream().map(MessageDetailResponse::getId).toList(),
+                last.stream().map(MessageDetailResponse::getId).toList());
+    }
+
+    @Test
+    void userPagesSpanConversations() {
+        List<MessageDetailResponse> page = messageService.findUserMessagesPage(userId, null, 2 * CONVERSATION_SIZE + 1);
+
+        assertEquals(2 * CONVERSATION_SIZE, page.size());
+        assertTrue(page.stream().allMatch(message -> message.getUser_id().equals(userId)));
+    }
+}
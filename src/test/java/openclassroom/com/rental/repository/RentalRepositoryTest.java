@@ -0,0 +1,227 @@
+package openclassroom.com.rental.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import openclassroom.com.rental.controller.RentalController;
+import openclassroom.com.rental.dto.KeysetCursor;
+import openclassroom.com.rental.dto.rental.RentalFilter;
+import openclassroom.com.rental.dto.rental.RentalResponse;
+import openclassroom.com.rental.dto.rental.RentalsVersion;
+import openclassroom.com.rental.entity.Rental;
+import openclassroom.com.rental.entity.User;
+import openclassroom.com.rental.service.FileStorageService;
+import openclassroom.com.rental.service.ImageVariantService;
+import openclassroom.com.rental.service.RentalJsonCache;
+import openclassroom.com.rental.service.RentalSearchService;
+import openclassroom.com.rental.service.RentalService;
+import openclassroom.com.rental.service.RentalsVersionCache;
+import openclassroom.com.rental.service.UserService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.security.Principal;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({RentalService.class, RentalsVersionCache.class, JacksonAutoConfiguration.class})
+class RentalRepositoryTest {
+    private static final Principal USER = UsernamePasswordAuthenticationToken.authenticated("alice", null, List.of());
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private RentalService rentalService;
+    @Autowired
+    private RentalsVersionCache rentalsVersionCache;
+    @Autowired
+    private RentalRepository rentalRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private Statistics statistics;
+    private MockMvc mockMvc;
+    private Integer firstRentalId;
+    private Integer firstOwnerId;
+    private Integer otherOwnerId;
+
+    @BeforeEach
+    void setUp() {
+        for (int u = 0; u < 3; u++) {
+            User owner = new User();
+            owner.setName("owner" + u);
+            owner.setEmail("owner" + u + "@test.com");
+            owner.setPassword("secret");
+            entityManager.persist(owner);
+            if (firstOwnerId == null) {
+                firstOwnerId = owner.getId();
+            } else {
+                otherOwnerId = owner.getId();
+            }
+            for (int r = 0; r < 5; r++) {
+                Rental rental = new Rental();
+                rental.setName("rental " + u + "-" + r);
+                rental.setSurface(BigDecimal.valueOf(20 + r));
+                rental.setPrice(BigDecimal.valueOf(100 * (r + 1)));
+                rental.setDescription("description");
+                rental.setPictureUrl("http://localhost/uploads/x.jpg");
+                rental.setOwner(owner);
+                entityManager.persist(rental);
+                if (firstRentalId == null) {
+                    firstRentalId = rental.getId();
+                }
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        RentalController controller = new RentalController(rentalService, mock(RentalSearchService.class),
+                mock(UserService.class), mock(FileStorageService.class), mock(ImageVariantService.class),
+                new RentalJsonCache(objectMapper, DataSize.ofMegabytes(1), new SimpleMeterRegistry()),
+                rentalsVersionCache, objectMapper);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+        // The rows above were persisted without events, and the bean outlives each test
+        rentalsVersionCache.invalidate();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void listingRunsOneStatement() {
+        List<RentalResponse> page = rentalService.findRentalsPage(new RentalFilter(), null, 21);
+
+        assertEquals(15, page.size());
+        assertTrue(page.stream().allMatch(r -> r.getOwner_id() != null));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void cursorPagesDoNotOverlap() {
+        List<RentalResponse> first = rentalService.findRentalsPage(new RentalFilter(), null, 10);
+        RentalResponse last = first.get(first.size() - 1);
+        List<RentalResponse> second = rentalService.findRentalsPage(new RentalFilter(),
+                new KeysetCursor(last.getCreatedAt(), last.getId()), 10);
+
+        assertEquals(5, second.size());
+        assertTrue(second.stream().noneMatch(r -> first.stream().anyMatch(f -> f.getId().equals(r.getId()))));
+    }
+
+    @Test
+    void detailEndpointRunsOneStatement() throws Exception {
+        String etag = mockMvc.perform(get("/api/rentals/" + firstRentalId).principal(USER))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        mockMvc.perform(get("/api/rentals/" + firstRentalId).principal(USER).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void createWithOwnerReferenceRunsOneStatement() {
+        Rental rental = new Rental();
+        rental.setName("new rental");
+        rental.setSurface(BigDecimal.TEN);
+        rental.setPrice(BigDecimal.TEN);
+        rental.setOwner(entityManager.getReference(User.class, firstOwnerId));
+        rental.setCreatedAt(new Timestamp(System.currentTimeMillis()));
+        rentalService.saveRental(rental);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void ownershipIsCheckedByTheUpdateItself() {
+        assertTrue(rentalService.updateOwnedRental(firstRentalId, firstOwnerId, "renamed",
+                BigDecimal.ONE, BigDecimal.ONE, "description", null));
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        assertFalse(rentalService.updateOwnedRental(firstRentalId, otherOwnerId, "stolen",
+                BigDecimal.ONE, BigDecimal.ONE, "description", "http://localhost/uploads/y.jpg"));
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        RentalResponse rental = rentalService.findRentalResponseById(firstRentalId).orElseThrow();
+        assertEquals("renamed", rental.getName());
+        assertEquals("http://localhost/uploads/x.jpg", rental.getPicture());
+    }
+
+    @Test
+    void listingEndpointOnlyCountsTheTableOncePerVersion() throws Exception {
+        String etag = mockMvc.perform(get("/api/rentals").principal(USER))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        mockMvc.perform(get("/api/rentals").principal(USER)).andExpect(status().isOk());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        mockMvc.perform(get("/api/rentals").principal(USER).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void validatorsFollowChanges() throws Exception {
+        String detail = mockMvc.perform(get("/api/rentals/" + firstRentalId).principal(USER))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String listing = mockMvc.perform(get("/api/rentals").principal(USER))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        rentalService.updateOwnedRental(firstRentalId, firstOwnerId, "renamed",
+                BigDecimal.ONE, BigDecimal.ONE, "description", null);
+        // Done by the RentalChangedEvent listener on commit; this test's transaction is never committed
+        rentalsVersionCache.invalidate();
+        mockMvc.perform(get("/api/rentals/" + firstRentalId).principal(USER).header(HttpHeaders.IF_NONE_MATCH, detail))
+                .andExpect(status().isOk());
+        listing = mockMvc.perform(get("/api/rentals").principal(USER).header(HttpHeaders.IF_NONE_MATCH, listing))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        rentalService.deleteRental(firstRentalId);
+        rentalsVersionCache.invalidate();
+        assertEquals(14, rentalsVersionCache.get().getCount());
+        mockMvc.perform(get("/api/rentals").principal(USER).header(HttpHeaders.IF_NONE_MATCH, listing))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void updateStampedByAClockBehindStillChangesTheListingVersion() {
+        RentalsVersion before = rentalService.findRentalsVersion();
+
+        // Another instance whose clock is behind: updated_at doesn't reach the current maximum
+        assertEquals(1, rentalRepository.updateOwned(firstRentalId, firstOwnerId, "renamed",
+                BigDecimal.ONE, BigDecimal.ONE, "description", new Timestamp(0)));
+        RentalsVersion after = rentalService.findRentalsVersion();
+
+        assertEquals(before.getCount(), after.getCount());
+        assertEquals(before.getMaxId(), after.getMaxId());
+        assertEquals(before.getRevisions() + 1, after.getRevisions());
+    }
+}
@@ -0,0 +1,94 @@
+package openclassroom.com.rental.repository;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import openclassroom.com.rental.entity.User;
+import openclassroom.com.rental.service.RentalService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Streams one million rentals into a JSON document. Run with -Plarge-tests,
+ * which caps the heap at 64MB: materialising the result would not fit.
+ * The database is file-backed so the table itself does not live on the heap.
+ */
+@Tag("large")
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/h2/streaming;MODE=MySQL;CACHE_SIZE=8192",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(RentalService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RentalStreamingTest {
+    private static final int ROWS = 1_000_000;
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private RentalService rentalService;
+
+    @Test
+    void streamsOneMillionRentalsInConstantMemory() throws IOException {
+        User owner = new User();
+        owner.setName("owner");
+        owner.setEmail("owner@test.com");
+        owner.setPassword("secret");
+        owner = userRepository.save(owner);
+        jdbcTemplate.update("""
+                INSERT INTO rentals (name, surface, price, picture, description, owner_id, create_at, updated_at)
+                SELECT 'rental ' || X, 50, 100, 'http://localhost/uploads/picture.jpg',
+                       'a reasonably long description of the rental', ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP
+                FROM SYSTEM_RANGE(1, ?)
+                """, owner.getId(), ROWS);
+
+        CountingOutputStream out = new CountingOutputStream();
+        AtomicLong written = new AtomicLong();
+        try (JsonGenerator generator = new ObjectMapper().createGenerator(out)) {
+            generator.writeStartArray();
+            rentalService.streamAllRentals(rental -> {
+                try {
+                    generator.writeObject(rental);
+                    written.incrementAndGet();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            generator.writeEndArray();
+        }
+
+        assertEquals(ROWS, written.get());
+        assertTrue(out.count > ROWS * 100L);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package openclassroom.com.rental.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import openclassroom.com.rental.config.CacheConfig;
+import openclassroom.com.rental.dto.user.UserAccount;
+import openclassroom.com.rental.entity.User;
+import openclassroom.com.rental.exception.ConflictException;
+import openclassroom.com.rental.security.TokenVersionRegistry;
+import openclassroom.com.rental.service.UserService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({UserService.class, CustomUserDetailsService.class, TokenVersionRegistry.class, CacheConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserRepositoryTest {
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private CustomUserDetailsService userDetailsService;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private TokenVersionRegistry tokenVersionRegistry;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setName("cached");
+        user.setEmail("cached@test.com");
+        user.setPassword("secret");
+        userService.saveUser(user);
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        userRepository.findAll().forEach(user -> userService.deleteUser(user.getId()));
+    }
+
+    @Test
+    void burstOfAuthenticatedRequestsIssuesOneSelect() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<UserDetails>> results = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                results.add(executor.submit(() -> userDetailsService.loadUserByUsername("cached@test.com")));
+            }
+            for (Future<UserDetails> result : results) {
+                assertEquals("cached@test.com", result.get().getUsername());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void saveEvictsCachedUser() {
+        UserAccount cached = userService.findByEmail("cached@test.com").orElseThrow();
+        User user = userRepository.findById(cached.getId()).orElseThrow();
+        user.setName("renamed");
+        userService.saveUser(user);
+
+        assertEquals("cached", cached.getName());
+        assertEquals("renamed", userService.findByEmail("cached@test.com").orElseThrow().getName());
+    }
+
+    @Test
+    void revokedAndDeletedUsersLoseTheirTokens() throws InterruptedException {
+        Integer id = userService.findByEmail("cached@test.com").orElseThrow().getId();
+        // Another instance, sharing the users table
+        TokenVersionRegistry otherInstance = new TokenVersionRegistry(userRepository, Duration.ofMillis(200), 100);
+        assertTrue(tokenVersionRegistry.isCurrent(id, 0));
+        assertTrue(otherInstance.isCurrent(id, 0));
+        assertFalse(tokenVersionRegistry.isCurrent(-1, 0));
+
+        userService.revokeTokens(id);
+        assertFalse(tokenVersionRegistry.isCurrent(id, 0));
+        assertTrue(tokenVersionRegistry.isCurrent(id, 1));
+        Thread.sleep(300);
+        assertFalse(otherInstance.isCurrent(id, 0));
+        assertTrue(otherInstance.isCurrent(id, 1));
+
+        userService.deleteUser(id);
+        assertFalse(tokenVersionRegistry.isCurrent(id, 1));
+        Thread.sleep(300);
+        assertFalse(otherInstance.isCurrent(id, 1));
+    }
+
+    @Test
+    void outdatedHashIsRewrittenOnLogin() {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(4);
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder("pbkdf2", Map.of(
+                "bcrypt", bcrypt,
+                "pbkdf2", new Pbkdf2PasswordEncoder("", 16, 1000, Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256)));
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider(userDetailsService);
+        provider.setPasswordEncoder(encoder);
+        provider.setUserDetailsPasswordService(userDetailsService);
+        // A hash written before encoder ids were stored
+        UserAccount user = userService.findByEmail("cached@test.com").orElseThrow();
+        userService.updatePassword(user.getId(), bcrypt.encode("secret"));
+
+        provider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("cached@test.com", "secret"));
+
+        String upgraded = userRepository.findByEmail("cached@test.com").orElseThrow().getPassword();
+        assertTrue(upgraded.startsWith("{pbkdf2}"), upgraded);
+        provider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("cached@test.com", "secret"));
+        assertEquals(upgraded, userRepository.findByEmail("cached@test.com").orElseThrow().getPassword());
+    }
+
+    @Test
+    void registrationIsOneReadAndOneInsert() {
+        userService.checkAvailable("new@test.com", "newcomer");
+        userService.register(newUser("newcomer", "new@test.com"));
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        ConflictException email = assertThrows(ConflictException.class,
+                () -> userService.checkAvailable("cached@test.com", "someone"));
+        assertEquals("Email is already in use", email.getMessage());
+        ConflictException name = assertThrows(ConflictException.class,
+                () -> userService.checkAvailable("other@test.com", "cached"));
+        assertEquals("Name is already in use", name.getMessage());
+    }
+
+    @Test
+    void concurrentRegistrationsOfOneEmailCreateOneUser() throws Exception {
+        int attempts = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(attempts);
+        List<Future<User>> results = new ArrayList<>();
+        for (int i = 0; i < attempts; i++) {
+            String name = "racer" + i;
+            results.add(pool.submit(() -> {
+                // Every attempt passes the check before any of them inserts
+                userService.checkAvailable("race@test.com", name);
+                start.await();
+                return userService.register(newUser(name, "race@test.com"));
+            }));
+        }
+        start.countDown();
+        int created = 0;
+        for (Future<User> result : results) {
+            try {
+                result.get();
+                created++;
+            } catch (ExecutionException ex) {
+                ConflictException conflict = assertInstanceOf(ConflictException.class, ex.getCause());
+                assertEquals("Email is already in use", conflict.getMessage());
+            }
+        }
+        pool.shutdown();
+
+        assertEquals(1, created);
+        assertEquals(1, userRepository.findEmailsByEmailOrName("race@test.com", "nobody").size());
+    }
+
+    private static User newUser(String name, String email) {
+        User user = new User();
+        user.setName(name);
+        user.setEmail(email);
+        user.setPassword("secret");
+        return user;
+    }
+}
@@ -0,0 +1,97 @@
+package openclassroom.com.rental.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedPasswordEncoderTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ThreadPoolTaskExecutor executor;
+
+    // Hashing blocks until released, so the test controls how long the worker is busy
+    private final PasswordEncoder slowEncoder = new PasswordEncoder() {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            await();
+            return "hash:" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            await();
+            return encodedPassword.equals("hash:" + rawPassword);
+        }
+
+        private void await() {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void hashesOnTheExecutor() {
+        release.countDown();
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(slowEncoder, executor, Duration.ofSeconds(1));
+
+        assertEquals("hash:secret", encoder.encode("secret"));
+        assertTrue(encoder.matches("secret", "hash:secret"));
+        assertFalse(encoder.matches("other", "hash:secret"));
+    }
+
+    @Test
+    void rejectsWhenTheQueueIsFull() {
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(slowEncoder, executor, Duration.ofSeconds(5));
+        // One running, one queued
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> encoder.encode("a"));
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> encoder.encode("b"));
+        while (executor.getThreadPoolExecutor().getQueue().isEmpty()) {
+            Thread.onSpinWait();
+        }
+
+        TaskRejectedException ex = assertThrows(TaskRejectedException.class, () -> encoder.encode("c"));
+        assertEquals("Too many authentication attempts in progress", ex.getMessage());
+
+        release.countDown();
+        assertEquals("hash:a", running.join());
+        assertEquals("hash:b", queued.join());
+    }
+
+    @Test
+    void givesUpAfterTheTimeout() {
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(slowEncoder, executor, Duration.ofMillis(100));
+
+        assertThrows(TaskRejectedException.class, () -> encoder.matches("secret", "hash:secret"));
+    }
+}
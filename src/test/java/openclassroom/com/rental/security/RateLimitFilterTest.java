@@ -0,0 +1,114 @@
+package openclassroom.com.rental.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitFilterTest {
+
+    private final JwtService jwtService =
+            new JwtService(Base64.getEncoder().encodeToString(new byte[32]), 100, new SimpleMeterRegistry());
+
+    private RateLimitFilter filter(int maxConcurrent) {
+        return new RateLimitFilter(jwtService, true,
+                new String[]{"/api/auth/**=2/1m", "/**=3/1s"}, maxConcurrent, 1000, new SimpleMeterRegistry());
+    }
+
+    private static MockHttpServletRequest request(String method, String path, String address) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setRemoteAddr(address);
+        return request;
+    }
+
+    private MockHttpServletResponse send(RateLimitFilter filter, MockHttpServletRequest request, FilterChain chain)
+            throws IOException, ServletException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private MockHttpServletResponse send(RateLimitFilter filter, MockHttpServletRequest request)
+            throws IOException, ServletException {
+        return send(filter, request, new MockFilterChain());
+    }
+
+    @Test
+    void bucketRefillsAtItsRate() {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        TokenBucket bucket = new TokenBucket(3, second, 0);
+
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(second / 3, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(second / 3));
+        assertTrue(bucket.tryAcquire(second / 3) > 0);
+    }
+
+    @Test
+    void loginsAreLimitedPerAddress() throws Exception {
+        RateLimitFilter filter = filter(10);
+
+        assertEquals(200, send(filter, request("POST", "/api/auth/login", "10.0.0.1")).getStatus());
+        assertEquals(200, send(filter, request("POST", "/api/auth/login", "10.0.0.1")).getStatus());
+        MockHttpServletResponse limited = send(filter, request("POST", "/api/auth/login", "10.0.0.1"));
+
+        assertEquals(429, limited.getStatus());
+        assertEquals("30", limited.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals(200, send(filter, request("POST", "/api/auth/login", "10.0.0.2")).getStatus());
+        // Other routes have their own budget
+        assertEquals(200, send(filter, request("GET", "/api/rentals", "10.0.0.1")).getStatus());
+    }
+
+    @Test
+    void authenticatedUsersBehindOneAddressHaveTheirOwnBudget() throws Exception {
+        RateLimitFilter filter = filter(10);
+        String alice = jwtService.generateToken(new AuthenticatedUser(1, "alice@test.com", null, List.of(), 0));
+        String bob = jwtService.generateToken(new AuthenticatedUser(2, "bob@test.com", null, List.of(), 0));
+
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletRequest request = request("GET", "/api/rentals", "10.0.0.1");
+            request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + alice);
+            assertEquals(200, send(filter, request).getStatus());
+        }
+        MockHttpServletRequest aliceAgain = request("GET", "/api/rentals", "10.0.0.1");
+        aliceAgain.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + alice);
+        assertEquals(429, send(filter, aliceAgain).getStatus());
+
+        MockHttpServletRequest fromBob = request("GET", "/api/rentals", "10.0.0.1");
+        fromBob.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + bob);
+        assertEquals(200, send(filter, fromBob).getStatus());
+        // A forged token falls back to the address, which still has its full budget
+        MockHttpServletRequest forged = request("GET", "/api/rentals", "10.0.0.1");
+        forged.addHeader(HttpHeaders.AUTHORIZATION, "Bearer not-a-token");
+        assertEquals(200, send(filter, forged).getStatus());
+    }
+
+    @Test
+    void requestsBeyondTheConcurrencyLimitAreShed() throws Exception {
+        RateLimitFilter filter = filter(1);
+        MockHttpServletResponse[] nested = new MockHttpServletResponse[1];
+
+        // The second request arrives while the first is still in the chain
+        MockHttpServletResponse first = send(filter, request("GET", "/api/rentals", "10.0.0.1"),
+                (request, response) -> nested[0] = send(filter, request("GET", "/api/rentals", "10.0.0.2")));
+
+        assertEquals(200, first.getStatus());
+        assertEquals(503, nested[0].getStatus());
+        assertEquals("1", nested[0].getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals(200, send(filter, request("GET", "/api/rentals", "10.0.0.2")).getStatus());
+    }
+}
@@ -0,0 +1,113 @@
+package openclassroom.com.rental.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import openclassroom.com.rental.dto.MessageRequest;
+import openclassroom.com.rental.entity.Rental;
+import openclassroom.com.rental.entity.User;
+import openclassroom.com.rental.exception.ResourceNotFoundException;
+import openclassroom.com.rental.repository.MessageRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(MessageService.class)
+class MessageServiceTest {
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private MessageService messageService;
+    @Autowired
+    private MessageRepository messageRepository;
+
+    private Statistics statistics;
+    private final List<Integer> rentalIds = new ArrayList<>();
+    private final List<Integer> userIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int u = 0; u < 3; u++) {
+            User user = new User();
+            user.setName("user" + u);
+            user.setEmail("user" + u + "@test.com");
+            user.setPassword("secret");
+            entityManager.persist(user);
+            userIds.add(user.getId());
+            Rental rental = new Rental();
+            rental.setName("rental " + u);
+            rental.setSurface(BigDecimal.TEN);
+            rental.setPrice(BigDecimal.TEN);
+            rental.setOwner(user);
+            entityManager.persist(rental);
+            rentalIds.add(rental.getId());
+        }
+        entityManager.flush();
+        entityManager.clear();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    private MessageRequest request(Integer rentalId, Integer userId, String text) {
+        MessageRequest request = new MessageRequest();
+        request.setRental_id(rentalId);
+        request.setUser_id(userId);
+        request.setMessage(text);
+        return request;
+    }
+
+    @Test
+    void batchValidatesWithOneQueryPerTable() {
+        List<MessageRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            requests.add(request(rentalIds.get(i % 3), userIds.get((i + 1) % 3), "message " + i));
+        }
+
+        assertEquals(300, messageService.saveMessages(requests));
+
+        // The inserts go through JdbcTemplate, outside Hibernate's statistics
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(300, messageRepository.count());
+    }
+
+    @Test
+    void batchWithAnUnknownIdInsertsNothing() {
+        List<MessageRequest> requests = List.of(
+                request(rentalIds.get(0), userIds.get(0), "valid"),
+                request(rentalIds.get(0), -1, "unknown user"));
+
+        assertThrows(ResourceNotFoundException.class, () -> messageService.saveMessages(requests));
+        assertEquals(0, messageRepository.count());
+    }
+
+    @Test
+    void singleMessageRunsOneCheckAndOneInsert() {
+        messageService.saveMessage(request(rentalIds.get(0), userIds.get(1), "hello"));
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void singleMessageToAnUnknownRentalIsRejected() {
+        ResourceNotFoundException ex = assertThrows(ResourceNotFoundException.class,
+                () -> messageService.saveMessage(request(-1, userIds.get(0), "hello")));
+
+        assertEquals("Rental not found with id: -1", ex.getMessage());
+        assertEquals(0, messageRepository.count());
+    }
+}
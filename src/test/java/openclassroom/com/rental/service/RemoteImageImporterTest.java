@@ -0,0 +1,174 @@
+package openclassroom.com.rental.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import openclassroom.com.rental.exception.BadRequestException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RemoteImageImporterTest {
+    private static final byte[] PICTURE = "not really a jpeg".getBytes();
+
+    @TempDir
+    Path uploadDir;
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/picture.jpg", exchange -> respond(exchange, "image/jpeg", PICTURE));
+        server.createContext("/page.html", exchange -> respond(exchange, "text/html", "<html/>".getBytes()));
+        server.createContext("/huge", exchange -> {
+            // Chunked, so only the streaming guard can catch it
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                byte[] chunk = new byte[8192];
+                for (int i = 0; i < 64; i++) {
+                    out.write(chunk);
+                }
+            } catch (IOException ignored) {
+                // The importer hung up
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 50; i++) {
+                    out.write(1);
+                    out.flush();
+                    Thread.sleep(100);
+                }
+            } catch (IOException | InterruptedException ignored) {
+                // The importer hung up
+            }
+        });
+        server.createContext("/counted", exchange -> {
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(100);
+                respond(exchange, "image/jpeg", exchange.getRequestURI().getQuery().getBytes());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private RemoteImageImporter importer(int maxConcurrent) {
+        FileStorageService fileStorageService = new FileStorageService(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(fileStorageService, "uploadDir", uploadDir.toString());
+        return new RemoteImageImporter(fileStorageService, Duration.ofSeconds(2), Duration.ofSeconds(2),
+                Duration.ofSeconds(1), DataSize.ofKilobytes(64), maxConcurrent, 100);
+    }
+
+    private List<Path> storedFiles() throws IOException {
+        try (Stream<Path> files = Files.list(uploadDir)) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    void storesPictureUnderItsContentHash() throws IOException {
+        String url = importer(4).importImage(baseUrl + "/picture.jpg");
+
+        List<Path> files = storedFiles();
+        assertEquals(1, files.size());
+        String name = files.get(0).getFileName().toString();
+        assertTrue(name.matches("[0-9a-f]{64}\\.jpg"), name);
+        assertTrue(url.endsWith("/uploads/" + name), url);
+    }
+
+    @Test
+    void rejectsNonImages() throws IOException {
+        assertThrows(BadRequestException.class, () -> importer(4).importImage(baseUrl + "/page.html"));
+        assertThrows(BadRequestException.class, () -> importer(4).importImage("file:///etc/passwd"));
+        assertTrue(storedFiles().isEmpty());
+    }
+
+    @Test
+    void abortsBodiesOverTheSizeLimit() throws IOException {
+        assertThrows(BadRequestException.class, () -> importer(4).importImage(baseUrl + "/huge"));
+        assertTrue(storedFiles().isEmpty());
+    }
+
+    @Test
+    void abortsSlowDownloads() throws IOException {
+        long start = System.nanoTime();
+        BadRequestException ex = assertThrows(BadRequestException.class, () -> importer(4).importImage(baseUrl + "/slow"));
+
+        assertTrue(ex.getMessage().startsWith("Timed out"), ex.getMessage());
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(3).toNanos());
+        assertTrue(storedFiles().isEmpty());
+    }
+
+    @Test
+    void batchRunsWithinTheConcurrencyLimit() {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            urls.add(baseUrl + "/counted?" + i);
+        }
+        urls.add(baseUrl + "/page.html");
+
+        List<RemoteImageImporter.Result> results = importer(3).importAll(urls);
+
+        assertEquals(urls.size(), results.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(urls.get(i), results.get(i).url());
+            assertNull(results.get(i).error());
+        }
+        assertNull(results.get(20).pictureUrl());
+        assertTrue(maxInFlight.get() <= 3, "max in flight " + maxInFlight.get());
+        assertTrue(maxInFlight.get() > 1, "imports did not overlap");
+    }
+}
@@ -0,0 +1,70 @@
+package openclassroom.com.rental.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import openclassroom.com.rental.dto.rental.ListRentalResponse;
+import openclassroom.com.rental.dto.rental.RentalResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RentalJsonCacheTest {
+    private static final Timestamp CREATED = Timestamp.valueOf("2024-03-01 10:15:30");
+
+    private ObjectMapper objectMapper;
+    private RentalJsonCache cache;
+
+    @BeforeEach
+    void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        cache = new RentalJsonCache(objectMapper, DataSize.ofMegabytes(1), new SimpleMeterRegistry());
+    }
+
+    private static RentalResponse rental(int id, String name, Timestamp updatedAt) {
+        return new RentalResponse(id, name, BigDecimal.valueOf(45), BigDecimal.valueOf(750),
+                "http://localhost/uploads/" + id + ".jpg", "Close to the \"old\" town, é", 7, CREATED, updatedAt);
+    }
+
+    private String page(List<RentalResponse> rentals, String next) {
+        return new String(cache.writePage(rentals, next), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void pagesMatchWhatJacksonWrites() throws Exception {
+        List<RentalResponse> rentals = List.of(rental(1, "Loft", CREATED), rental(2, "Studio", CREATED));
+
+        assertEquals(objectMapper.writeValueAsString(new ListRentalResponse(rentals, "abc")), page(rentals, "abc"));
+        assertEquals(objectMapper.writeValueAsString(new ListRentalResponse(rentals, null)), page(rentals, null));
+        assertEquals(objectMapper.writeValueAsString(new ListRentalResponse(List.of(), null)), page(List.of(), null));
+    }
+
+    @Test
+    void entriesAreReusedUntilTheRowChanges() {
+        page(List.of(rental(1, "Loft", CREATED)), null);
+
+        // Same updated_at: the cached bytes are served even though the name differs
+        assertTrue(page(List.of(rental(1, "Renamed", CREATED)), null).contains("Loft"));
+
+        Timestamp later = new Timestamp(CREATED.getTime() + 1000);
+        assertTrue(page(List.of(rental(1, "Renamed", later)), null).contains("Renamed"));
+    }
+
+    @Test
+    void changeEventsEvictTheEntry() {
+        page(List.of(rental(1, "Loft", CREATED)), null);
+
+        cache.onRentalChanged(RentalChangedEvent.deleted(1));
+
+        assertFalse(page(List.of(rental(1, "Renamed", CREATED)), null).contains("Loft"));
+    }
+}
@@ -0,0 +1,163 @@
+package openclassroom.com.rental.service;
+
+import openclassroom.com.rental.dto.rental.ListRentalResponse;
+import openclassroom.com.rental.dto.rental.RentalResponse;
+import openclassroom.com.rental.dto.rental.RentalText;
+import openclassroom.com.rental.entity.Rental;
+import openclassroom.com.rental.entity.User;
+import openclassroom.com.rental.repository.RentalRepository;
+import openclassroom.com.rental.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest
+@Import({RentalService.class, RentalSearchService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RentalSearchServiceTest {
+
+    @Autowired
+    private RentalService rentalService;
+    @Autowired
+    private RentalSearchService rentalSearchService;
+    @Autowired
+    private RentalRepository rentalRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private User owner;
+
+    @BeforeEach
+    void setUp() {
+        owner = new User();
+        owner.setName("owner");
+        owner.setEmail("owner@test.com");
+        owner.setPassword("secret");
+        owner = userRepository.save(owner);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rentalRepository.findAll().forEach(rental -> rentalService.deleteRental(rental.getId()));
+        userRepository.deleteAll();
+    }
+
+    private Rental rental(String name, String description) {
+        Rental rental = new Rental();
+        rental.setName(name);
+        rental.setDescription(description);
+        rental.setSurface(BigDecimal.TEN);
+        rental.setPrice(BigDecimal.TEN);
+        rental.setPictureUrl("http://localhost/uploads/x.jpg");
+        rental.setOwner(owner);
+        return rental;
+    }
+
+    private List<String> names(ListRentalResponse response) {
+        return response.getRentals().stream().map(RentalResponse::getName).toList();
+    }
+
+    @Test
+    void savedRentalsAreSearchableByPrefixAndRankedByField() {
+        rentalService.saveRental(rental("Quiet studio", "Close to the seaside apartments"));
+        rentalService.saveRental(rental("Seaside apartment", "Bright, with a balcony"));
+        rentalService.saveRental(rental("Mountain chalet", "Séjour with a fireplace"));
+
+        assertEquals(List.of("Seaside apartment", "Quiet studio"), names(rentalSearchService.search("seaside", 0, 10)));
+        assertEquals(List.of("Seaside apartment", "Quiet studio"), names(rentalSearchService.search("apart", 0, 10)));
+        assertEquals(List.of("Mountain chalet"), names(rentalSearchService.search("sejour fire", 0, 10)));
+        assertTrue(rentalSearchService.search("castle", 0, 10).getRentals().isEmpty());
+    }
+
+    @Test
+    void updatesAndDeletesReachTheIndex() {
+        Rental rental = rentalService.saveRental(rental("Loft", "Industrial"));
+        rental.setName("Penthouse");
+        rentalService.saveRental(rental);
+
+        assertTrue(rentalSearchService.search("loft", 0, 10).getRentals().isEmpty());
+        assertEquals(List.of("Penthouse"), names(rentalSearchService.search("penthouse", 0, 10)));
+
+        rentalService.deleteRental(rental.getId());
+        assertTrue(rentalSearchService.search("penthouse", 0, 10).getRentals().isEmpty());
+    }
+
+    @Test
+    void rebuildIndexesExistingRowsAndPagesDoNotOverlap() {
+        // Saved through the repository, so no event reaches the index
+        for (int i = 0; i < 25; i++) {
+            rentalRepository.save(rental("Garden house " + i, "Garden"));
+        }
+        assertTrue(rentalSearchService.search("garden", 0, 10).getRentals().isEmpty());
+
+        rentalSearchService.rebuild();
+
+        Set<String> seen = new HashSet<>();
+        ListRentalResponse page = rentalSearchService.search("garden", 0, 10);
+        int pages = 1;
+        seen.addAll(names(page));
+        while (page.getNext() != null) {
+            page = rentalSearchService.search("garden", Integer.parseInt(page.getNext()), 10);
+            seen.addAll(names(page));
+            pages++;
+        }
+        assertEquals(3, pages);
+        assertEquals(25, seen.size());
+        assertNull(page.getNext());
+    }
+
+    @Test
+    void pagesPastTheResultLimitAreEmpty() {
+        rentalService.saveRental(rental("Loft", "Industrial"));
+
+        assertEquals(List.of("Loft"), names(rentalSearchService.search("loft", 0, 20)));
+        // page * size overflows an int
+        ListRentalResponse page = rentalSearchService.search("loft", Integer.MAX_VALUE, 20);
+        assertTrue(page.getRentals().isEmpty());
+        assertNull(page.getNext());
+        assertTrue(rentalSearchService.search("loft", RentalSearchService.MAX_RESULTS / 20, 20).getRentals().isEmpty());
+    }
+
+    @Test
+    void changesMadeDuringARebuildSurviveIt() throws IOException {
+        RentalRepository repository = mock(RentalRepository.class);
+        RentalSearchService service = new RentalSearchService(repository, 1, 100);
+        when(repository.findMaxId()).thenReturn(2);
+        // Both rentals change after the slice has read them, but before it indexes them
+        when(repository.findTextInRange(0, 2)).thenAnswer(invocation -> {
+            service.onRentalChanged(new RentalChangedEvent(1, new RentalText(1, "Penthouse", null)));
+            service.onRentalChanged(RentalChangedEvent.deleted(2));
+            return List.of(new RentalText(1, "Loft", null), new RentalText(2, "Loft annex", null));
+        });
+        when(repository.findResponsesByIdIn(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<Integer>>getArgument(0).stream().map(RentalResponse::new).toList());
+        try {
+            service.rebuild();
+
+            assertTrue(service.search("loft", 0, 10).getRentals().isEmpty());
+            assertEquals(List.of(1), service.search("penthouse", 0, 10).getRentals().stream()
+                    .map(RentalResponse::getId).toList());
+        } finally {
+            service.close();
+        }
+    }
+}
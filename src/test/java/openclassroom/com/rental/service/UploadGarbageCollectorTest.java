@@ -0,0 +1,107 @@
+package openclassroom.com.rental.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import openclassroom.com.rental.repository.RentalRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UploadGarbageCollectorTest {
+    private static final byte[] PICTURE = "not really a jpeg".getBytes();
+
+    @TempDir
+    Path uploadDir;
+
+    private RentalRepository rentalRepository;
+    private FileStorageService fileStorageService;
+    private UploadGarbageCollector collector;
+
+    @BeforeEach
+    void setUp() {
+        rentalRepository = mock(RentalRepository.class);
+        fileStorageService = new FileStorageService(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(fileStorageService, "uploadDir", uploadDir.toString());
+        collector = new UploadGarbageCollector(rentalRepository, fileStorageService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(collector, "uploadDir", uploadDir.toString());
+        ReflectionTestUtils.setField(collector, "gracePeriod", Duration.ofHours(1));
+    }
+
+    private String store() throws IOException {
+        return fileStorageService.store(new ByteArrayInputStream(PICTURE), ".jpg");
+    }
+
+    @Test
+    void unreferencedFilesPastTheGracePeriodAreDeleted() throws IOException {
+        Path kept = uploadDir.resolve(store());
+        Path orphan = uploadDir.resolve(fileStorageService.store(new ByteArrayInputStream(new byte[] {1}), ".jpg"));
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - Duration.ofHours(2).toMillis());
+        Files.setLastModifiedTime(kept, old);
+        Files.setLastModifiedTime(orphan, old);
+        when(rentalRepository.findAllPictureUrls()).thenReturn(List.of("http://localhost/uploads/" + kept.getFileName()));
+
+        collector.collect();
+
+        assertTrue(Files.exists(kept));
+        assertFalse(Files.exists(orphan));
+    }
+
+    @Test
+    void duplicateUploadDuringTheSweepKeepsTheFile() throws IOException {
+        Path stored = uploadDir.resolve(store());
+        Files.setLastModifiedTime(stored, FileTime.fromMillis(System.currentTimeMillis() - Duration.ofHours(2).toMillis()));
+        // The same picture is uploaded again once the sweep has read the references
+        when(rentalRepository.findAllThumbnailUrls()).thenAnswer(invocation -> {
+            store();
+            return List.of();
+        });
+
+        collector.collect();
+
+        assertTrue(Files.exists(stored));
+    }
+
+    @Test
+    void fileReusedWhileBeingDeletedIsKeptOrWrittenAgain() throws Exception {
+        Path stored = uploadDir.resolve(store());
+        long cutoff = System.currentTimeMillis() - Duration.ofHours(1).toMillis();
+        FileTime old = FileTime.fromMillis(cutoff - 1000);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 2000; round++) {
+                Files.setLastModifiedTime(stored, old);
+                CyclicBarrier start = new CyclicBarrier(2);
+                Future<?> sweep = pool.submit(() -> {
+                    start.await();
+                    return fileStorageService.deleteIfUnusedSince(stored, cutoff);
+                });
+                Future<?> upload = pool.submit(() -> {
+                    start.await();
+                    return store();
+                });
+                sweep.get();
+                upload.get();
+                assertTrue(Files.exists(stored), "lost in round " + round);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}